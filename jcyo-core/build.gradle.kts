@@ -1,5 +1,6 @@
 plugins {
 	`java-library`
+	alias(libs.plugins.jmh)
 	id("de.siphalor.jcyo.publishing")
 }
 
@@ -10,6 +11,14 @@ repositories {
 	mavenCentral()
 }
 
+// The vector API is optional at runtime, see BoundaryScanner.
+// Only the vectorized implementation is compiled against it, so that the rest of the code can't depend on it.
+val vectorModuleArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+val vector by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+}
+
 dependencies {
 	annotationProcessor(libs.lombok)
 	compileOnly(libs.lombok)
@@ -25,14 +34,29 @@ dependencies {
 	testImplementation(libs.junit.core)
 	testRuntimeOnly(libs.junit.launcher)
 	testImplementation(libs.assertj)
+	testRuntimeOnly(vector.output)
+	jmhRuntimeOnly(vector.output)
 }
 
 java {
 	withSourcesJar()
 }
 
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+	options.compilerArgs.addAll(vectorModuleArgs)
+}
+
+tasks.jar {
+	from(vector.output)
+}
+
+tasks.named<Jar>("sourcesJar") {
+	from(vector.allJava)
+}
+
 tasks.test {
 	useJUnitPlatform()
+	jvmArgs(vectorModuleArgs)
 	systemProperties(
 		"junit.jupiter.execution.timeout.mode" to "disabled_on_debug",
 		"junit.jupiter.execution.timeout.testable.method.default" to "10s",
@@ -40,6 +64,10 @@ tasks.test {
 	)
 }
 
+jmh {
+	jvmArgsAppend.addAll(vectorModuleArgs)
+}
+
 publishing {
 	publications {
 		create<MavenPublication>("jar") {
@@ -0,0 +1,107 @@
+package de.siphalor.jcyo.core.api;
+
+import de.siphalor.jcyo.core.api.value.JcyoString;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Processes a generated tree of source files with directives with a varying number of threads.
+ * The files are stable after the first invocation, so every invocation reads, transforms and compares all files.
+ * <p>
+ * The {@code skewed} corpus turns a few files of the last package into multi-megabyte ones,
+ * which decide the duration of a run if they are picked up late.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessAllBenchmark {
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	@Param({"2000"})
+	public int fileCount;
+
+	@Param({"uniform", "skewed"})
+	public String corpus;
+
+	@Param({"true", "false"})
+	public boolean longestFirst;
+
+	private Path baseDirectory;
+	private Path cleanOutputDirectory;
+	private Jcyo jcyo;
+
+	@Setup
+	public void setup() throws IOException {
+		baseDirectory = Files.createTempDirectory("jcyo-benchmark");
+		cleanOutputDirectory = Files.createTempDirectory("jcyo-benchmark-clean");
+		for (int i = 0; i < fileCount; i++) {
+			Path directory = baseDirectory.resolve("package" + i % 20);
+			Files.createDirectories(directory);
+			Files.writeString(directory.resolve("Source" + i + ".java"), createSource(i, sectionCount(i)));
+		}
+
+		JcyoVariables variables = new JcyoVariables();
+		variables.set("platform", new JcyoString("fabric"));
+		jcyo = Jcyo.builder()
+				.variables(variables)
+				.options(JcyoOptions.builder()
+						.updateInput(true)
+						.parallelism(threads)
+						.longestFirstScheduling(longestFirst)
+						.build())
+				.baseDirectory(baseDirectory)
+				.cleanOutputDirectory(cleanOutputDirectory)
+				.build();
+	}
+
+	private int sectionCount(int index) {
+		boolean huge = corpus.equals("skewed") && index % 20 == 19 && index >= fileCount - 80;
+		return huge ? 20_000 : 40;
+	}
+
+	private static String createSource(int index, int sectionCount) {
+		StringBuilder builder = new StringBuilder("package de.siphalor.jcyo.benchmark;\n\n")
+				.append("import java.util.List;\n")
+				.append("//- import java.util.Map;\n\n")
+				.append("class Source").append(index).append(" {\n");
+		for (int i = 0; i < sectionCount; i++) {
+			builder.append("\t//# if platform == \"fabric\"\n")
+					.append("\t//- int fabric").append(i).append(" = ").append(i).append(";\n")
+					.append("\t//# else\n")
+					.append("\tint forge").append(i).append(" = ").append(i).append("; // the other platform\n")
+					.append("\t//# end\n")
+					.append("\tList<String> values").append(i).append(" = List.of(\"a\", \"b\", \"c\");\n");
+		}
+		return builder.append("}\n").toString();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		deleteRecursively(baseDirectory);
+		deleteRecursively(cleanOutputDirectory);
+	}
+
+	private static void deleteRecursively(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Benchmark
+	public long processAll() throws JcyoProcessingException {
+		jcyo.processAll();
+		return jcyo.statistics().processedFiles();
+	}
+}
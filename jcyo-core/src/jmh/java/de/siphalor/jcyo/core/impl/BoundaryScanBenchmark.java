@@ -0,0 +1,85 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexes a large, comment and literal heavy source file with scalar and vectorized boundary scanning.
+ * The input size is reported as {@link #sourceBytes} to derive the throughput in bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoundaryScanBenchmark {
+	@Param({"scalar", "preferred"})
+	public String scanner;
+
+	@Param({"4"})
+	public int sourceMegabytes;
+
+	public int sourceBytes;
+
+	private final JcyoOptions options = JcyoOptions.builder().build();
+	private final TokenTape tape = new TokenTape();
+	private BoundaryScanner boundaryScanner;
+	private char[] chars;
+	private MemorySegment bytes;
+
+	@Setup
+	public void setup() {
+		boundaryScanner = switch (scanner) {
+			case "scalar" -> BoundaryScanner.scalar();
+			case "preferred" -> BoundaryScanner.preferred();
+			default -> throw new IllegalArgumentException("Unknown scanner: " + scanner);
+		};
+
+		String source = createSource(sourceMegabytes * 1024 * 1024);
+		chars = source.toCharArray();
+		byte[] encoded = source.getBytes(StandardCharsets.UTF_8);
+		bytes = MemorySegment.ofArray(encoded);
+		sourceBytes = encoded.length;
+	}
+
+	private static String createSource(int size) {
+		String unit = """
+				/**
+				 * Returns the configured value for the given key, falling back to the default value if it is missing.
+				 * The lookup walks the whole hierarchy of parent configurations before giving up on the key.
+				 */
+				public String lookup(String key) {
+					// Keys are normalized first, since users tend to mix up the casing of their configuration entries.
+					String message = "Failed to look up the configuration value for the requested key in any scope";
+					String template = \"""
+							This is a text block that spans multiple lines and contains enough text
+							to make the scanning of its contents noticeable in the benchmark results.
+							\""";
+					return values.getOrDefault(key, message + template); // trailing comment on the same line
+				}
+				""";
+		StringBuilder builder = new StringBuilder(size + unit.length());
+		while (builder.length() < size) {
+			builder.append(unit);
+		}
+		return builder.toString();
+	}
+
+	@Benchmark
+	public int lexChars() {
+		new JcyoArrayLexer(chars, 0, chars.length, options, boundaryScanner).lexInto(tape);
+		return tape.size();
+	}
+
+	@Benchmark
+	public int lexUtf8() {
+		new JcyoUtf8Lexer(bytes, options, boundaryScanner).lexInto(tape);
+		return tape.size();
+	}
+}
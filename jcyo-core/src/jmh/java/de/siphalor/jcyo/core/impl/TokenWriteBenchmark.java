@@ -0,0 +1,102 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a fixed token sequence with plain and disabled regions through the token writer.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} across the {@link #tokenCount}s:
+ * if it doesn't grow with the token count, writing allocates nothing per token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenWriteBenchmark {
+	@Param({"outputStreamWriter", "direct"})
+	public String writer;
+
+	@Param({"10000", "100000"})
+	public int tokenCount;
+
+	private final JcyoOptions options = JcyoOptions.builder().build();
+	private final byte[] buffer = new byte[256 * 1024];
+	private Token[] tokens;
+
+	@Setup
+	public void setup() {
+		List<Token> unit = List.of(
+				WhitespaceToken.ofRun('\t', 1),
+				JavaKeywordToken.of(JavaKeyword.RETURN),
+				WhitespaceToken.of(' '),
+				new IdentifierToken("value"),
+				OperatorToken.of(';'),
+				LineBreakToken.of('\n', 1),
+				new JcyoDisabledRegionStartToken(CommentStyle.LINE, "\t"),
+				WhitespaceToken.ofRun('\t', 1),
+				new IdentifierToken("disabled"),
+				OperatorToken.of('('),
+				OperatorToken.of(')'),
+				WhitespaceToken.of(' '),
+				new PlainJavaCommentToken("/* spans\n\t * lines */", CommentStyle.FLEX, false),
+				LineBreakToken.of('\n', 1),
+				new JcyoDisabledRegionEndToken()
+		);
+		List<Token> list = new ArrayList<>(tokenCount + unit.size() + 1);
+		while (list.size() < tokenCount) {
+			list.addAll(unit);
+		}
+		list.add(EofToken.instance());
+		tokens = list.toArray(Token[]::new);
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		OutputStream out = OutputStream.nullOutputStream();
+		Writer target = switch (writer) {
+			case "outputStreamWriter" -> new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			case "direct" -> new DirectUtf8Writer(out, buffer);
+			default -> throw new IllegalArgumentException("Unknown writer: " + writer);
+		};
+		try (var tokenWriter = new TokenWriter(target, options)) {
+			tokenWriter.writeAll(new ArrayTokenStream(tokens));
+		}
+	}
+
+	private static class ArrayTokenStream implements TokenStream {
+		private final Token[] tokens;
+		private int index;
+
+		ArrayTokenStream(Token[] tokens) {
+			this.tokens = tokens;
+		}
+
+		@Override
+		public Token nextToken() {
+			return tokens[Math.min(index++, tokens.length - 1)];
+		}
+
+		@Override
+		public int nextTokens(Token[] batch, int offset, int length) {
+			int count = 0;
+			while (count < length) {
+				Token token = nextToken();
+				batch[offset + count++] = token;
+				if (token instanceof EofToken) {
+					break;
+				}
+			}
+			return count;
+		}
+	}
+}
@@ -1,45 +1,171 @@
 package de.siphalor.jcyo.core.api;
 
 import de.siphalor.jcyo.core.impl.JcyoProcessor;
+import de.siphalor.jcyo.core.impl.LongestFirstSchedule;
+import de.siphalor.jcyo.core.impl.SourceTreeWalker;
+import de.siphalor.jcyo.core.impl.StagedExecutor;
 import lombok.Builder;
 import lombok.extern.apachecommons.CommonsLog;
 import org.jspecify.annotations.Nullable;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
+/**
+ * The entry point for processing files.
+ * Files may be processed concurrently, each thread gets a processor of its own.
+ */
 @CommonsLog
 public class Jcyo {
 	private final Path baseDirectory;
+	private final JcyoOptions options;
 	private final JcyoProcessor processor;
+	/**
+	 * The processors that aren't in use by any thread right now.
+	 */
+	private final Queue<JcyoProcessor> idleProcessors = new ConcurrentLinkedQueue<>();
 
 	@Builder
 	private Jcyo(JcyoVariables variables, JcyoOptions options, Path baseDirectory, @Nullable Path cleanOutputDirectory) {
 		this.baseDirectory = baseDirectory;
+		this.options = options;
 		this.processor = new JcyoProcessor(variables, options, baseDirectory, cleanOutputDirectory);
+		idleProcessors.add(processor);
 	}
 
 	public void process(Path inputFile) throws JcyoProcessingException {
-		processor.process(inputFile);
+		JcyoProcessor idleProcessor = idleProcessors.poll();
+		if (idleProcessor == null) {
+			idleProcessor = processor.fork();
+		}
+		try {
+			idleProcessor.process(inputFile);
+		} finally {
+			idleProcessors.add(idleProcessor);
+		}
+	}
+
+	/**
+	 * Persists the fingerprints of the processed files, which {@link #processAll()} does on its own.
+	 *
+	 * @see JcyoOptions#fingerprintFile()
+	 */
+	public void saveFingerprints() throws JcyoProcessingException {
+		processor.saveFingerprints();
+	}
+
+	public JcyoStatistics statistics() {
+		return processor.statistics();
 	}
 
+	/**
+	 * Processes all files in the base directory that match the includes, but not the excludes.
+	 * Failures of single files are logged, so that the remaining files are still processed.
+	 * Unless longest-first scheduling is used, files are processed as soon as the walk finds them.
+	 *
+	 * @see JcyoOptions#includes()
+	 * @see JcyoOptions#excludes()
+	 * @see JcyoOptions#parallelism()
+	 * @see JcyoOptions#stagedExecution()
+	 */
 	public void processAll() throws JcyoProcessingException {
+		var walker = new SourceTreeWalker(baseDirectory, options.includes(), options.excludes());
+		if (options.stagedExecution()) {
+			processStaged(walker);
+		} else if (options.parallelism() > 1) {
+			processParallel(walker);
+		} else {
+			walk(walker, null, this::processLogged);
+		}
+		processor.saveFingerprints();
+	}
+
+	/**
+	 * @param pool the pool to enumerate subdirectories on if the tree is walked in parallel,
+	 * otherwise the tree is walked on the calling thread
+	 */
+	private void walk(
+			SourceTreeWalker walker,
+			@Nullable ForkJoinPool pool,
+			Consumer<Path> files
+	) throws JcyoProcessingException {
 		try {
-			Files.walk(baseDirectory)
-					.filter(path -> {
-						var fileName = path.getFileName().toString();
-						return fileName.endsWith(".java") && !fileName.contains("-");
-					})
-					.forEach(path -> {
-						try {
-							processor.process(path);
-						} catch (JcyoProcessingException e) {
-							log.error("Failed to process file: " + path, e);
-						}
-					});
+			if (pool != null && options.parallelTreeWalk()) {
+				walker.walk(pool, files);
+			} else {
+				walker.walk(files);
+			}
 		} catch (IOException e) {
 			throw new JcyoProcessingException("Failed to walk input directory: " + baseDirectory, e);
 		}
 	}
+
+	private List<Path> collect(SourceTreeWalker walker, @Nullable ForkJoinPool pool) throws JcyoProcessingException {
+		Queue<Path> files = new ConcurrentLinkedQueue<>();
+		walk(walker, pool, files::add);
+		return List.copyOf(files);
+	}
+
+	private LongestFirstSchedule schedule(List<Path> files) {
+		return LongestFirstSchedule.create(files, processor::recordedCost, options.hugeFileThreshold());
+	}
+
+	private void processParallel(SourceTreeWalker walker) throws JcyoProcessingException {
+		var pool = new ForkJoinPool(options.parallelism());
+		try {
+			if (options.longestFirstScheduling()) {
+				schedule(collect(walker, pool)).process(pool, options.parallelism(), this::processLogged);
+			} else {
+				Queue<ForkJoinTask<?>> tasks = new ConcurrentLinkedQueue<>();
+				walk(walker, pool, file -> tasks.add(pool.submit(() -> processLogged(file))));
+				tasks.forEach(ForkJoinTask::join);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * With longest-first scheduling, files are submitted with the most expensive ones first,
+	 * so that they are read and transformed first.
+	 * The tree is walked in parallel on the common pool, since the stages bring their own threads.
+	 */
+	private void processStaged(SourceTreeWalker walker) throws JcyoProcessingException {
+		ForkJoinPool walkPool = ForkJoinPool.commonPool();
+		try (var executor = new StagedExecutor(processor, options, this::logFailure)) {
+			if (options.longestFirstScheduling()) {
+				LongestFirstSchedule schedule = schedule(collect(walker, walkPool));
+				for (Path file = schedule.pollHuge(); file != null; file = schedule.pollHuge()) {
+					executor.submit(file);
+				}
+				for (Path file = schedule.poll(); file != null; file = schedule.poll()) {
+					executor.submit(file);
+				}
+			} else {
+				walk(walker, walkPool, executor::submit);
+			}
+			executor.awaitCompletion();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JcyoProcessingException("Interrupted while processing files in: " + baseDirectory, e);
+		}
+	}
+
+	private void processLogged(Path path) {
+		try {
+			process(path);
+		} catch (JcyoProcessingException e) {
+			logFailure(path, e);
+		}
+	}
+
+	private void logFailure(Path path, JcyoProcessingException exception) {
+		log.error("Failed to process file: " + path, exception);
+	}
 }
@@ -0,0 +1,28 @@
+package de.siphalor.jcyo.core.api;
+
+/**
+ * How files are recognized as unchanged since they were last processed, so that they can be skipped.
+ * <p>
+ * The fingerprints are taken before the input file is read.
+ * If the input file is updated, the fingerprint of the written content is recorded instead.
+ * They are only valid as long as the variables and the {@link JcyoOptions#outputConfiguration() options}
+ * that change the outputs stay the same.
+ *
+ * @see JcyoOptions#fingerprintFile()
+ */
+public enum JcyoChangeDetection {
+	/**
+	 * Processes every file and compares the complete output against the current content.
+	 */
+	FULL,
+	/**
+	 * Trusts that a file with the same size and modification time as before is unchanged.
+	 * Skipped files aren't even opened, but changes that keep both the size and the modification time go unnoticed.
+	 */
+	MODIFICATION_TIME_AND_SIZE,
+	/**
+	 * Compares the size and a {@link java.util.zip.CRC32C} checksum of the content.
+	 * Skipped files are read once, but not processed.
+	 */
+	CRC32C,
+}
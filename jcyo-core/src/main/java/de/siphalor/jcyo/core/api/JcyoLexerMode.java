@@ -0,0 +1,17 @@
+package de.siphalor.jcyo.core.api;
+
+public enum JcyoLexerMode {
+	/**
+	 * Reads the input one character at a time through a {@link java.io.Reader}.
+	 */
+	STREAMING,
+	/**
+	 * Decodes the whole input into a reusable character array up front and lexes it by index.
+	 */
+	BUFFERED,
+	/**
+	 * Maps UTF-8 input files into memory and lexes their bytes directly.
+	 * Output is encoded to UTF-8 by hand instead of going through a {@link java.nio.charset.CharsetEncoder}.
+	 */
+	MAPPED_UTF8,
+}
@@ -2,11 +2,152 @@ package de.siphalor.jcyo.core.api;
 
 import lombok.Builder;
 import lombok.Value;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
 
 @Builder
 @Value
 public class JcyoOptions {
 	boolean updateInput;
+	/**
+	 * How input files are updated, if {@link #updateInput} is set.
+	 */
+	@Builder.Default
+	JcyoUpdateStrategy updateStrategy = JcyoUpdateStrategy.IN_PLACE;
+	/**
+	 * How files that haven't changed since they were last processed are recognized and skipped.
+	 */
+	@Builder.Default
+	JcyoChangeDetection changeDetection = JcyoChangeDetection.FULL;
+	/**
+	 * The file in which the fingerprints of the processed files are kept between runs,
+	 * or {@code null} to only keep them for the lifetime of the processor.
+	 * Only used if the {@link #changeDetection} isn't {@link JcyoChangeDetection#FULL}.
+	 *
+	 * @see Jcyo#saveFingerprints()
+	 */
+	@Nullable Path fingerprintFile;
+	/**
+	 * The globs of the files that {@link Jcyo#processAll()} processes, or an empty list to process all files.
+	 * Globs that contain a {@code /} are matched against the path relative to the base directory,
+	 * all others against the file name.
+	 */
+	@Builder.Default
+	List<String> includes = List.of("*.java");
+	/**
+	 * The globs of the files and directories that {@link Jcyo#processAll()} leaves out, matched like the {@link #includes}.
+	 * Excluded directories, like {@code build} or {@code node_modules}, aren't descended into.
+	 */
+	@Builder.Default
+	List<String> excludes = List.of(".*", "*-*.java");
+	/**
+	 * Whether {@link Jcyo#processAll()} enumerates subdirectories in parallel, which pays off for very wide trees.
+	 * Only applies to parallel and staged runs, sequential runs walk the tree on the calling thread.
+	 */
+	boolean parallelTreeWalk;
+	/**
+	 * The number of files that {@link Jcyo#processAll()} processes at once.
+	 */
+	@Builder.Default
+	int parallelism = 1;
+	/**
+	 * Whether parallel runs of {@link Jcyo#processAll()} start with the most expensive files,
+	 * going by the processing times recorded with the {@link #fingerprintFile} or else by the file sizes.
+	 */
+	@Builder.Default
+	boolean longestFirstScheduling = true;
+	/**
+	 * The input size in bytes from which files get a worker of their own in parallel runs of {@link Jcyo#processAll()},
+	 * or {@code 0} to never do so. Only applies with {@link #longestFirstScheduling}.
+	 */
+	@Builder.Default
+	long hugeFileThreshold = 1024 * 1024;
+	/**
+	 * Whether {@link Jcyo#processAll()} runs the reading, the transformation and the writing of files
+	 * as separate stages, each with a concurrency of its own.
+	 * The transformation runs with the {@link #parallelism}.
+	 * The files are read into memory as a whole and lexed as UTF-8, regardless of the {@link #lexerMode}.
+	 */
+	boolean stagedExecution;
+	/**
+	 * The number of files that are read at once in {@link #stagedExecution staged execution}.
+	 */
+	@Builder.Default
+	int readParallelism = 2;
+	/**
+	 * The number of threads that complete asynchronous writes in {@link #stagedExecution staged execution}.
+	 */
+	@Builder.Default
+	int writeParallelism = 2;
+	/**
+	 * The number of bytes of inputs and outputs that {@link #stagedExecution staged execution} holds in memory
+	 * before it stops reading further files. Larger files are processed on their own.
+	 */
+	@Builder.Default
+	long maxInFlightBytes = 64 * 1024 * 1024;
 	char commandPrefix = '#';
 	char disabledPrefix = '-';
+	@Builder.Default
+	JcyoLexerMode lexerMode = JcyoLexerMode.STREAMING;
+	/**
+	 * Whether files without any directive or disabled code markers and without imports are left untouched,
+	 * respectively copied verbatim to the clean output, without being lexed.
+	 * Files with imports, but without markers, only go through the disabling of unused imports.
+	 */
+	@Builder.Default
+	boolean skipDirectiveFreeFiles = true;
+	/**
+	 * Whether spans of ordinary code are passed through the pipeline as single tokens.
+	 * Only applies to the {@link JcyoLexerMode#BUFFERED} and {@link JcyoLexerMode#MAPPED_UTF8} lexer modes,
+	 * whose lexers produce the chunks as they go.
+	 * Merging the tokens of the {@link JcyoLexerMode#STREAMING} lexer afterward costs more than it saves.
+	 */
+	@Builder.Default
+	boolean verbatimChunks = true;
+	/**
+	 * Whether unpadding, the removal of generated and disabled code and the directive application
+	 * run as a single pass instead of as separate stages. Both produce the same output.
+	 */
+	@Builder.Default
+	boolean fusedTransformation = true;
+	/**
+	 * The input size in chars, respectively bytes, from which files are lexed in parallel, or {@code 0} to never do so.
+	 * Only applies to the {@link JcyoLexerMode#BUFFERED} and {@link JcyoLexerMode#MAPPED_UTF8} lexer modes.
+	 */
+	@Builder.Default
+	int parallelLexingThreshold = 4 * 1024 * 1024;
+	/**
+	 * Whether the input is scanned up front for the kinds of markers and for imports,
+	 * so that the stages that can't change the output of a file are left out of its pipeline.
+	 *
+	 * @see JcyoStatistics#skippedStages(JcyoPipelineStage)
+	 */
+	@Builder.Default
+	boolean elideStages = true;
+	/**
+	 * The input size in bytes from which lexing, the transformation stages and writing run concurrently
+	 * on separate threads, or {@code 0} to never do so.
+	 * Only the {@link JcyoLexerMode#STREAMING} lexer gets a thread of its own, since the other modes lex up front.
+	 */
+	int pipelinedStagesThreshold;
+	/**
+	 * Whether the outputs of {@link JcyoLexerMode#MAPPED_UTF8} files are rendered as edits against the input,
+	 * so that unchanged spans are copied in bulk instead of being written token by token.
+	 */
+	@Builder.Default
+	boolean editListRendering = true;
+
+	/**
+	 * Describes the options that can change the outputs, e.g. to invalidate the fingerprints of processed files.
+	 * The other options only change how the outputs are produced.
+	 * New options that change the outputs have to be added here.
+	 */
+	public String outputConfiguration() {
+		return "updateInput=" + updateInput
+				+ ",commandPrefix=" + commandPrefix
+				+ ",disabledPrefix=" + disabledPrefix
+				+ ",skipDirectiveFreeFiles=" + skipDirectiveFreeFiles;
+	}
 }
@@ -0,0 +1,23 @@
+package de.siphalor.jcyo.core.api;
+
+/**
+ * The stages of the processing pipeline that are left out for files in which they can't change anything.
+ */
+public enum JcyoPipelineStage {
+	/**
+	 * Removes the padding that was inserted after disabled code markers.
+	 */
+	UNPADDING,
+	/**
+	 * Removes generated code and the markers of disabled code.
+	 */
+	GENERATED_AND_DISABLED_REMOVAL,
+	/**
+	 * Evaluates the directives and disables the code in inactive branches.
+	 */
+	DIRECTIVE_APPLICATION,
+	/**
+	 * Disables the imports that are unused after the directives have been applied.
+	 */
+	UNUSED_IMPORT_DISABLING,
+}
@@ -0,0 +1,85 @@
+package de.siphalor.jcyo.core.api;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+public class JcyoStatistics {
+	private final LongAdder processedFiles = new LongAdder();
+	private final LongAdder directiveFreeFiles = new LongAdder();
+	private final LongAdder unchangedFiles = new LongAdder();
+	private final Map<JcyoPipelineStage, LongAdder> skippedStages = new EnumMap<>(JcyoPipelineStage.class);
+
+	public JcyoStatistics() {
+		for (JcyoPipelineStage stage : JcyoPipelineStage.values()) {
+			skippedStages.put(stage, new LongAdder());
+		}
+	}
+
+	public long processedFiles() {
+		return processedFiles.sum();
+	}
+
+	/**
+	 * @return the number of files that contained no directives, disabled code or imports
+	 * and were therefore passed through
+	 */
+	public long directiveFreeFiles() {
+		return directiveFreeFiles.sum();
+	}
+
+	/**
+	 * @return the number of files that were skipped, since their fingerprint showed that they haven't changed
+	 * @see JcyoOptions#changeDetection()
+	 */
+	public long unchangedFiles() {
+		return unchangedFiles.sum();
+	}
+
+	/**
+	 * @return the number of processed files whose pipeline left out the given stage
+	 */
+	public long skippedStages(JcyoPipelineStage stage) {
+		return skippedStages.get(stage).sum();
+	}
+
+	@ApiStatus.Internal
+	public void recordProcessedFile() {
+		processedFiles.increment();
+	}
+
+	@ApiStatus.Internal
+	public void recordDirectiveFreeFile() {
+		directiveFreeFiles.increment();
+	}
+
+	@ApiStatus.Internal
+	public void recordUnchangedFile() {
+		unchangedFiles.increment();
+	}
+
+	@ApiStatus.Internal
+	public void recordSkippedStages(Set<JcyoPipelineStage> stages) {
+		for (JcyoPipelineStage stage : stages) {
+			skippedStages.get(stage).increment();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("JcyoStatistics[processedFiles=").append(processedFiles())
+				.append(", directiveFreeFiles=").append(directiveFreeFiles())
+				.append(", unchangedFiles=").append(unchangedFiles())
+				.append(", skippedStages={");
+		for (JcyoPipelineStage stage : JcyoPipelineStage.values()) {
+			if (stage.ordinal() > 0) {
+				sb.append(", ");
+			}
+			sb.append(stage).append('=').append(skippedStages(stage));
+		}
+		return sb.append("}]").toString();
+	}
+}
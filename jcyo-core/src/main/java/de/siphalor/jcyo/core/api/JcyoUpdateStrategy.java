@@ -0,0 +1,19 @@
+package de.siphalor.jcyo.core.api;
+
+/**
+ * How input files are updated when {@link JcyoOptions#updateInput()} is set.
+ */
+public enum JcyoUpdateStrategy {
+	/**
+	 * Compares the output against the input file while it is written
+	 * and only rewrites the file from the first differing byte onward.
+	 * Files that end up unchanged are never written to.
+	 */
+	IN_PLACE,
+	/**
+	 * Renders the complete output into memory and, only if it differs from the input file,
+	 * writes it to a temporary file that is moved over the input file.
+	 * An interrupted run can't leave a partially written input file behind.
+	 */
+	ATOMIC,
+}
@@ -3,14 +3,19 @@ package de.siphalor.jcyo.core.api;
 import de.siphalor.jcyo.core.api.value.JcyoValue;
 import lombok.NoArgsConstructor;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The variables that directives are evaluated against.
+ * They may be read and written concurrently.
+ */
 @NoArgsConstructor
 public class JcyoVariables {
-	private final Map<String, JcyoValue> variables = new HashMap<>();
+	private final Map<String, JcyoValue> variables = new ConcurrentHashMap<>();
 
 	public void set(String name, JcyoValue value) {
 		variables.put(name.toUpperCase(Locale.ROOT), value);
@@ -23,4 +28,11 @@ public class JcyoVariables {
 	public Optional<JcyoValue> get(String name) {
 		return Optional.ofNullable(variables.get(name.toUpperCase(Locale.ROOT)));
 	}
+
+	/**
+	 * @return an unmodifiable view of all variables by their upper case names
+	 */
+	public Map<String, JcyoValue> asMap() {
+		return Collections.unmodifiableMap(variables);
+	}
 }
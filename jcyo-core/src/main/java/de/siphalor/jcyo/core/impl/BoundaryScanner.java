@@ -0,0 +1,97 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Finds the next occurrence of one of two code units in the input of a lexer.
+ * This is used to skip over the contents of comments and literals.
+ * <p>
+ * If the {@code jdk.incubator.vector} module is available at runtime, a vectorized implementation is used.
+ * Otherwise, or if the system property {@value #DISABLE_VECTOR_PROPERTY} is set, this falls back to a scalar loop.
+ * The module has to be added with {@code --add-modules jdk.incubator.vector} to the JVM that runs jcyo,
+ * so the vectorized implementation is inactive in the Gradle plugin, unless the Gradle daemon has been started that way.
+ * <p>
+ * The vectorized implementation is loaded reflectively from a source set of its own,
+ * which is the only one that is compiled against the module.
+ */
+public abstract class BoundaryScanner {
+	public static final String DISABLE_VECTOR_PROPERTY = "jcyo.vector.disable";
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_IMPLEMENTATION = "de.siphalor.jcyo.core.impl.VectorBoundaryScanner";
+
+	public static BoundaryScanner scalar() {
+		return Scalar.INSTANCE;
+	}
+
+	public static BoundaryScanner preferred() {
+		return Preferred.INSTANCE;
+	}
+
+	/**
+	 * @return the index of the first char in the range that equals {@code first} or {@code second}, or {@code end}
+	 */
+	public abstract int indexOfAny(char[] chars, int from, int end, char first, char second);
+
+	/**
+	 * @return the offset of the first byte in the range that equals {@code first} or {@code second}, or {@code end}
+	 */
+	public abstract long indexOfAny(MemorySegment segment, long from, long end, byte first, byte second);
+
+	static int scalarIndexOfAny(char[] chars, int from, int end, char first, char second) {
+		for (int i = from; i < end; i++) {
+			char c = chars[i];
+			if (c == first || c == second) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	static long scalarIndexOfAny(MemorySegment segment, long from, long end, byte first, byte second) {
+		for (long i = from; i < end; i++) {
+			byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+			if (b == first || b == second) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private static class Scalar extends BoundaryScanner {
+		private static final Scalar INSTANCE = new Scalar();
+
+		@Override
+		public int indexOfAny(char[] chars, int from, int end, char first, char second) {
+			return scalarIndexOfAny(chars, from, end, first, second);
+		}
+
+		@Override
+		public long indexOfAny(MemorySegment segment, long from, long end, byte first, byte second) {
+			return scalarIndexOfAny(segment, from, end, first, second);
+		}
+	}
+
+	@CommonsLog
+	private static class Preferred {
+		private static final BoundaryScanner INSTANCE = create();
+
+		private static BoundaryScanner create() {
+			if (Boolean.getBoolean(DISABLE_VECTOR_PROPERTY)) {
+				return Scalar.INSTANCE;
+			}
+			if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+				log.debug("Module " + VECTOR_MODULE + " is not available, falling back to scalar scanning");
+				return Scalar.INSTANCE;
+			}
+			try {
+				return (BoundaryScanner) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				log.debug("Failed to initialize vectorized scanning, falling back to scalar scanning", e);
+				return Scalar.INSTANCE;
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package de.siphalor.jcyo.core.impl;
+
+/**
+ * Limits the number of bytes that are held in memory at once.
+ * A reservation that exceeds the limit on its own is granted once nothing else is reserved.
+ */
+public class ByteBudget {
+	private final long limit;
+	private long reserved;
+
+	public ByteBudget(long limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive: " + limit);
+		}
+		this.limit = limit;
+	}
+
+	/**
+	 * Waits until the given number of bytes fits into the budget and reserves them.
+	 *
+	 * @return the number of reserved bytes, which must be {@link #release released} later
+	 */
+	public synchronized long acquire(long bytes) throws InterruptedException {
+		long amount = Math.min(bytes, limit);
+		while (reserved + amount > limit) {
+			wait();
+		}
+		reserved += amount;
+		return amount;
+	}
+
+	/**
+	 * Reserves the given number of bytes without waiting, which may exceed the limit.
+	 * Meant for bytes that are derived from an existing reservation,
+	 * since waiting for them while holding the reservation could stall all holders.
+	 */
+	public synchronized void add(long bytes) {
+		reserved += bytes;
+	}
+
+	public synchronized void release(long bytes) {
+		reserved -= bytes;
+		notifyAll();
+	}
+
+	public synchronized long reserved() {
+		return reserved;
+	}
+}
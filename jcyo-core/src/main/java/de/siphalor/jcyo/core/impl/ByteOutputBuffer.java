@@ -0,0 +1,145 @@
+package de.siphalor.jcyo.core.impl;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * A reusable in-memory output, which can be compared against and written to files.
+ */
+public class ByteOutputBuffer extends OutputStream {
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final int COMPARE_CHUNK_SIZE = 64 * 1024;
+
+	private byte[] bytes = new byte[DEFAULT_CAPACITY];
+	private int length;
+	private byte @Nullable [] compareChunk;
+
+	/**
+	 * Discards the previous content, but keeps the allocated capacity.
+	 */
+	public ByteOutputBuffer reset() {
+		length = 0;
+		return this;
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(length + 1);
+		bytes[length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(length + len);
+		System.arraycopy(b, off, bytes, length, len);
+		length += len;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, capacity));
+		}
+	}
+
+	/**
+	 * @return whether the content of the given file channel equals the content of this buffer
+	 */
+	public boolean contentEquals(FileChannel channel) throws IOException {
+		if (channel.size() != length) {
+			return false;
+		}
+		byte[] chunkBytes = compareChunk;
+		if (chunkBytes == null) {
+			chunkBytes = compareChunk = new byte[COMPARE_CHUNK_SIZE];
+		}
+		ByteBuffer chunk = ByteBuffer.wrap(chunkBytes);
+		int position = 0;
+		while (position < length) {
+			chunk.clear().limit(Math.min(chunkBytes.length, length - position));
+			int read = channel.read(chunk, position);
+			if (read < 0) {
+				return false;
+			}
+			if (Arrays.mismatch(chunkBytes, 0, read, bytes, position, position + read) >= 0) {
+				return false;
+			}
+			position += read;
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the content of this buffer with the whole content of the given file channel.
+	 */
+	public ByteOutputBuffer readFrom(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IOException("File is too large to be buffered: " + size + " bytes");
+		}
+		length = 0;
+		ensureCapacity((int) size);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0) {
+				break;
+			}
+		}
+		length = buffer.position();
+		return this;
+	}
+
+	/**
+	 * @return the index of the first byte that differs from the content of the other buffer,
+	 * or {@code -1} if both are equal
+	 */
+	public int mismatch(ByteOutputBuffer other) {
+		return Arrays.mismatch(bytes, 0, length, other.bytes, 0, other.length);
+	}
+
+	/**
+	 * @return the CRC32C checksum of the current content
+	 */
+	public long checksum() {
+		var crc = new CRC32C();
+		crc.update(bytes, 0, length);
+		return crc.getValue();
+	}
+
+	/**
+	 * @return a segment that views the current content, which is only valid until the buffer is written to
+	 */
+	public MemorySegment segment() {
+		return MemorySegment.ofArray(bytes).asSlice(0, length);
+	}
+
+	/**
+	 * @return a byte buffer that views the current content from the given offset,
+	 * which is only valid until the buffer is written to
+	 */
+	public ByteBuffer byteBuffer(int offset) {
+		return ByteBuffer.wrap(bytes, offset, length - offset);
+	}
+
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public int capacity() {
+		return bytes.length;
+	}
+}
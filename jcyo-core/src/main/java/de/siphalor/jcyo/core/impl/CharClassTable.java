@@ -0,0 +1,91 @@
+package de.siphalor.jcyo.core.impl;
+
+/**
+ * Classifies codepoints exactly like the respective methods of {@link Character},
+ * but looks up ASCII characters in a precomputed table.
+ * Negative values (end of input) belong to no class.
+ */
+final class CharClassTable {
+	private static final int IDENTIFIER_START = 1;
+	private static final int IDENTIFIER_PART = 1 << 1;
+	private static final int WHITESPACE = 1 << 2;
+	private static final int DIGIT = 1 << 3;
+	private static final int NUMERIC_PART = 1 << 4;
+	private static final int INLINE_WHITESPACE = 1 << 5;
+	private static final byte[] ASCII = new byte[128];
+
+	static {
+		for (int c = 0; c < ASCII.length; c++) {
+			int classes = 0;
+			if (Character.isJavaIdentifierStart(c)) {
+				classes |= IDENTIFIER_START;
+			}
+			if (Character.isJavaIdentifierPart(c)) {
+				classes |= IDENTIFIER_PART;
+			}
+			if (Character.isWhitespace(c)) {
+				classes |= WHITESPACE;
+				if (c != '\n' && c != '\r') {
+					classes |= INLINE_WHITESPACE;
+				}
+			}
+			if (Character.isDigit(c)) {
+				classes |= DIGIT;
+			}
+			if (Character.isDigit(c) || c == '.' || Character.isLetter(c)) {
+				classes |= NUMERIC_PART;
+			}
+			ASCII[c] = (byte) classes;
+		}
+	}
+
+	private CharClassTable() {}
+
+	static boolean isJavaIdentifierStart(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & IDENTIFIER_START) != 0;
+		}
+		return Character.isJavaIdentifierStart(codepoint);
+	}
+
+	static boolean isJavaIdentifierPart(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & IDENTIFIER_PART) != 0;
+		}
+		return Character.isJavaIdentifierPart(codepoint);
+	}
+
+	static boolean isWhitespace(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & WHITESPACE) != 0;
+		}
+		return Character.isWhitespace(codepoint);
+	}
+
+	/**
+	 * @return whether the codepoint is whitespace, but not a line break character
+	 */
+	static boolean isInlineWhitespace(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & INLINE_WHITESPACE) != 0;
+		}
+		return Character.isWhitespace(codepoint);
+	}
+
+	static boolean isDigit(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & DIGIT) != 0;
+		}
+		return Character.isDigit(codepoint);
+	}
+
+	/**
+	 * @return whether the codepoint may continue a number literal, i.e. it is a digit, a letter or a dot
+	 */
+	static boolean isNumericPart(int codepoint) {
+		if ((codepoint & ~0x7F) == 0) {
+			return (ASCII[codepoint] & NUMERIC_PART) != 0;
+		}
+		return Character.isDigit(codepoint) || Character.isLetter(codepoint);
+	}
+}
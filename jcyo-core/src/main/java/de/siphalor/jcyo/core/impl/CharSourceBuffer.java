@@ -0,0 +1,45 @@
+package de.siphalor.jcyo.core.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+public class CharSourceBuffer {
+	private static final int DEFAULT_CAPACITY = 8192;
+
+	private char[] chars = new char[DEFAULT_CAPACITY];
+	private int length;
+
+	public CharSourceBuffer load(Reader reader) throws IOException {
+		return load(reader, 0);
+	}
+
+	/**
+	 * Decodes all remaining characters of the given reader into this buffer, replacing the previous content.
+	 * @param sizeHint the expected number of characters, e.g. the byte size of a UTF-8 file
+	 */
+	public CharSourceBuffer load(Reader reader, int sizeHint) throws IOException {
+		if (chars.length <= sizeHint) {
+			chars = new char[sizeHint + 1];
+		}
+		length = 0;
+		while (true) {
+			if (length == chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			int read = reader.read(chars, length, chars.length - length);
+			if (read < 0) {
+				return this;
+			}
+			length += read;
+		}
+	}
+
+	public char[] chars() {
+		return chars;
+	}
+
+	public int length() {
+		return length;
+	}
+}
@@ -0,0 +1,186 @@
+package de.siphalor.jcyo.core.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * A buffered writer that encodes UTF-8 by hand, copying ASCII characters straight into its byte buffer.
+ * Like an {@link java.io.OutputStreamWriter}, unpaired surrogates are replaced with {@code '?'}.
+ * <p>
+ * The buffer may be reused across writers, so that outputs that fit into it
+ * are encoded without allocations and written with a single write to the underlying stream.
+ */
+public class DirectUtf8Writer extends Writer {
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	private char pendingHighSurrogate;
+
+	public DirectUtf8Writer(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public DirectUtf8Writer(OutputStream out, int bufferSize) {
+		this(out, new byte[Math.max(bufferSize, 4)]);
+	}
+
+	/**
+	 * @param buffer a buffer of at least four bytes, whose previous content is discarded
+	 */
+	public DirectUtf8Writer(OutputStream out, byte[] buffer) {
+		if (buffer.length < 4) {
+			throw new IllegalArgumentException("Buffer must hold at least four bytes");
+		}
+		this.out = out;
+		this.buffer = buffer;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		writeChar((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (c < 0x80 && pendingHighSurrogate == 0) {
+				if (count == buffer.length) {
+					flushBuffer();
+				}
+				buffer[count++] = (byte) c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80 && pendingHighSurrogate == 0) {
+				if (count == buffer.length) {
+					flushBuffer();
+				}
+				buffer[count++] = (byte) c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	/**
+	 * Writes text that has already been encoded to UTF-8.
+	 */
+	public void writeEncoded(byte[] encoded) throws IOException {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			writeCodepoint('?');
+		}
+		int offset = 0;
+		while (offset < encoded.length) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int length = Math.min(encoded.length - offset, buffer.length - count);
+			System.arraycopy(encoded, offset, buffer, count, length);
+			count += length;
+			offset += length;
+		}
+	}
+
+	/**
+	 * Writes the bytes of the given segment between the offsets as they are,
+	 * e.g. a span of a UTF-8 source that is passed through unchanged.
+	 */
+	public void writeEncoded(MemorySegment encoded, long start, long end) throws IOException {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			writeCodepoint('?');
+		}
+		long offset = start;
+		while (offset < end) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int length = (int) Math.min(end - offset, buffer.length - count);
+			MemorySegment.copy(encoded, ValueLayout.JAVA_BYTE, offset, buffer, count, length);
+			count += length;
+			offset += length;
+		}
+	}
+
+	private void writeChar(char c) throws IOException {
+		if (pendingHighSurrogate != 0) {
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				writeCodepoint(Character.toCodePoint(high, c));
+				return;
+			}
+			writeCodepoint('?');
+		}
+		if (Character.isHighSurrogate(c)) {
+			pendingHighSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			writeCodepoint('?');
+		} else {
+			writeCodepoint(c);
+		}
+	}
+
+	private void writeCodepoint(int codepoint) throws IOException {
+		if (buffer.length - count < 4) {
+			flushBuffer();
+		}
+		if (codepoint < 0x80) {
+			buffer[count++] = (byte) codepoint;
+		} else if (codepoint < 0x800) {
+			buffer[count++] = (byte) (0xC0 | codepoint >> 6);
+			buffer[count++] = (byte) (0x80 | codepoint & 0x3F);
+		} else if (codepoint < 0x10000) {
+			buffer[count++] = (byte) (0xE0 | codepoint >> 12);
+			buffer[count++] = (byte) (0x80 | codepoint >> 6 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codepoint & 0x3F);
+		} else {
+			buffer[count++] = (byte) (0xF0 | codepoint >> 18);
+			buffer[count++] = (byte) (0x80 | codepoint >> 12 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codepoint >> 6 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codepoint & 0x3F);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			writeCodepoint('?');
+		}
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+}
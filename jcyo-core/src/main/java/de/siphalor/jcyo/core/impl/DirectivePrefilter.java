@@ -0,0 +1,199 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.directive.GeneratedDirective;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Scans raw UTF-8 bytes for the comment openers of directives and disabled code.
+ * If none are found, the input is known to contain nothing that jcyo would process.
+ * <p>
+ * A full scan additionally determines the {@link FileFacts} that allow leaving out pipeline stages.
+ */
+public class DirectivePrefilter {
+	private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	private static final byte[] GENERATED = GeneratedDirective.NAME.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] IMPORT = "import".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[] commandPrefix;
+	private final byte[] disabledPrefix;
+	/**
+	 * The number of bytes at the end of a chunk that must be retained for the next chunk,
+	 * so that markers and imports crossing the chunk border are found.
+	 */
+	private final int overlap;
+	private final ByteBuffer chunk;
+	private final MemorySegment chunkSegment;
+
+	public DirectivePrefilter(JcyoOptions options) {
+		this(options, DEFAULT_CHUNK_SIZE);
+	}
+
+	DirectivePrefilter(JcyoOptions options, int chunkSize) {
+		this.commandPrefix = String.valueOf(options.commandPrefix()).getBytes(StandardCharsets.UTF_8);
+		this.disabledPrefix = String.valueOf(options.disabledPrefix()).getBytes(StandardCharsets.UTF_8);
+		this.overlap = Math.max(1 + Math.max(commandPrefix.length, disabledPrefix.length), IMPORT.length);
+		this.chunk = ByteBuffer.allocate(Math.max(chunkSize, overlap * 2));
+		this.chunkSegment = MemorySegment.ofArray(chunk.array());
+	}
+
+	public boolean mayContainMarkers(MemorySegment segment) {
+		return containsMarker(segment, segment.byteSize());
+	}
+
+	public boolean mayContainMarkers(Path path) throws IOException {
+		return scanChunks(path, this::containsMarker);
+	}
+
+	public FileFacts scanFacts(MemorySegment segment) {
+		FactCollector collector = new FactCollector();
+		collector.scan(segment, segment.byteSize());
+		return collector.toFacts();
+	}
+
+	public FileFacts scanFacts(Path path) throws IOException {
+		FactCollector collector = new FactCollector();
+		scanChunks(path, collector::scan);
+		return collector.toFacts();
+	}
+
+	/**
+	 * @return whether the scanner stopped early
+	 */
+	private boolean scanChunks(Path path, ChunkScanner scanner) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			chunk.clear();
+			while (true) {
+				int read = channel.read(chunk);
+				int limit = chunk.position();
+				if (scanner.scan(chunkSegment, limit)) {
+					return true;
+				}
+				if (read < 0) {
+					return false;
+				}
+				int retained = Math.min(overlap, limit);
+				System.arraycopy(chunk.array(), limit - retained, chunk.array(), 0, retained);
+				chunk.position(retained);
+			}
+		}
+	}
+
+	private boolean containsMarker(MemorySegment segment, long limit) {
+		for (long i = 0; i + 2 < limit; i++) {
+			if (segment.get(ValueLayout.JAVA_BYTE, i) != '/') {
+				continue;
+			}
+			byte second = segment.get(ValueLayout.JAVA_BYTE, i + 1);
+			if (second != '/' && second != '*') {
+				continue;
+			}
+			if (matches(segment, i + 2, limit, commandPrefix) || matches(segment, i + 2, limit, disabledPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a directive starting at the given offset may be a {@code generated} directive.
+	 * If the chunk ends before this can be decided, it is assumed to be one.
+	 */
+	private static boolean mayBeGenerated(MemorySegment segment, long offset, long limit) {
+		while (offset < limit) {
+			byte b = segment.get(ValueLayout.JAVA_BYTE, offset);
+			if (b != ' ' && b != '\t') {
+				break;
+			}
+			offset++;
+		}
+		for (byte expected : GENERATED) {
+			if (offset >= limit) {
+				return true;
+			}
+			if (segment.get(ValueLayout.JAVA_BYTE, offset++) != expected) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(MemorySegment segment, long offset, long limit, byte[] expected) {
+		if (offset + expected.length > limit) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (segment.get(ValueLayout.JAVA_BYTE, offset + i) != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	private interface ChunkScanner {
+		/**
+		 * @return whether scanning can stop, because the result is already known
+		 */
+		boolean scan(MemorySegment segment, long limit);
+	}
+
+	private final class FactCollector {
+		private boolean directives;
+		private boolean generatedDirectives;
+		private boolean disabledCode;
+		private boolean imports;
+
+		boolean scan(MemorySegment segment, long limit) {
+			for (long i = 0; i < limit; i++) {
+				byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+				if (b == 'i') {
+					if (!imports && matches(segment, i, limit, IMPORT)) {
+						imports = true;
+						if (isComplete()) {
+							return true;
+						}
+					}
+					continue;
+				}
+				if (b != '/' || i + 2 >= limit) {
+					continue;
+				}
+				byte second = segment.get(ValueLayout.JAVA_BYTE, i + 1);
+				if (second != '/' && second != '*') {
+					continue;
+				}
+				if (matches(segment, i + 2, limit, commandPrefix)) {
+					directives = true;
+					if (!generatedDirectives && mayBeGenerated(segment, i + 2 + commandPrefix.length, limit)) {
+						generatedDirectives = true;
+					}
+				} else if (matches(segment, i + 2, limit, disabledPrefix)) {
+					disabledCode = true;
+				} else {
+					continue;
+				}
+				if (isComplete()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isComplete() {
+			return directives && generatedDirectives && disabledCode && imports;
+		}
+
+		FileFacts toFacts() {
+			return new FileFacts(directives, generatedDirectives, disabledCode, imports);
+		}
+	}
+}
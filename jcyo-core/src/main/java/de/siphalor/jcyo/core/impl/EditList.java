@@ -0,0 +1,114 @@
+package de.siphalor.jcyo.core.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of edits against a UTF-8 encoded source, sorted by their byte offsets.
+ * <p>
+ * Rendering copies the unchanged spans between the edits in bulk,
+ * so its cost depends on the number of edits rather than on the number of tokens.
+ */
+public class EditList {
+	private final List<Edit> edits = new ArrayList<>();
+
+	public void insert(int offset, String text) {
+		checkOrder(offset);
+		if (!text.isEmpty()) {
+			edits.add(new Insert(offset, text));
+		}
+	}
+
+	public void delete(int start, int end) {
+		checkOrder(start);
+		if (start == end) {
+			return;
+		}
+		if (!edits.isEmpty() && edits.getLast() instanceof Delete(int lastStart, int lastEnd) && lastEnd == start) {
+			edits.set(edits.size() - 1, new Delete(lastStart, end));
+		} else {
+			edits.add(new Delete(start, end));
+		}
+	}
+
+	private void checkOrder(int offset) {
+		if (!edits.isEmpty() && offset < edits.getLast().end()) {
+			throw new IllegalArgumentException(
+					"Edits must be added in order, but got offset " + offset + " after " + edits.getLast()
+			);
+		}
+	}
+
+	public List<Edit> edits() {
+		return Collections.unmodifiableList(edits);
+	}
+
+	/**
+	 * @return whether rendering yields the source as is
+	 */
+	public boolean isEmpty() {
+		return edits.isEmpty();
+	}
+
+	/**
+	 * Writes the edited source to the target.
+	 * The unchanged spans are transferred straight from the source channel.
+	 */
+	public void render(FileChannel source, long sourceSize, WritableByteChannel target) throws IOException {
+		long position = 0;
+		for (Edit edit : edits) {
+			transfer(source, position, edit.start(), target);
+			if (edit instanceof Insert(_, String text)) {
+				ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+				while (bytes.hasRemaining()) {
+					target.write(bytes);
+				}
+			}
+			position = edit.end();
+		}
+		transfer(source, position, sourceSize, target);
+	}
+
+	private static void transfer(FileChannel source, long start, long end, WritableByteChannel target) throws IOException {
+		while (start < end) {
+			long transferred = source.transferTo(start, end - start, target);
+			if (transferred <= 0) {
+				throw new EOFException("Source ended at " + start + " before " + end);
+			}
+			start += transferred;
+		}
+	}
+
+	public sealed interface Edit {
+		/**
+		 * @return the offset of the first source byte that is affected
+		 */
+		int start();
+
+		/**
+		 * @return the offset after the last source byte that is affected
+		 */
+		int end();
+	}
+
+	public record Insert(int offset, String text) implements Edit {
+		@Override
+		public int start() {
+			return offset;
+		}
+
+		@Override
+		public int end() {
+			return offset;
+		}
+	}
+
+	public record Delete(int start, int end) implements Edit {}
+}
@@ -0,0 +1,46 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.SourceSpans;
+import de.siphalor.jcyo.core.impl.token.RepresentableToken;
+import de.siphalor.jcyo.core.impl.token.VerbatimChunkToken;
+
+import java.io.IOException;
+
+/**
+ * Writes tokens as edits against their source.
+ * Tokens that are passed through from the source, as well as verbatim chunks that know their source span,
+ * are kept without looking at their text.
+ * Everything else is written as text, which mostly turns into insertions.
+ */
+public class EditListTokenWriter extends TokenWriter {
+	private final EditRecorder recorder;
+	private final SourceSpans spans;
+
+	public EditListTokenWriter(EditRecorder recorder, SourceSpans spans, JcyoOptions options) {
+		super(recorder, options);
+		this.recorder = recorder;
+		this.spans = spans;
+	}
+
+	@Override
+	protected void writeRaw(RepresentableToken token) throws IOException {
+		if (token instanceof VerbatimChunkToken chunkToken && chunkToken.hasSourceSpan()) {
+			recorder.keep(chunkToken.start(), chunkToken.end(), chunkToken.raw());
+			return;
+		}
+		int index = spans.indexOf(token);
+		if (index >= 0) {
+			recorder.keep(spans.start(index), spans.end(index), token.raw());
+		} else {
+			super.writeRaw(token);
+		}
+	}
+
+	/**
+	 * @return the recorded edits, which are only complete after closing
+	 */
+	public EditList edits() {
+		return recorder.edits();
+	}
+}
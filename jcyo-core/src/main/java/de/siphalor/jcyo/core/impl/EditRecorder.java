@@ -0,0 +1,132 @@
+package de.siphalor.jcyo.core.impl;
+
+import java.io.Writer;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * A writer that records the written text as an {@link EditList} against a UTF-8 encoded source.
+ * <p>
+ * Spans that are known to be taken from the source are {@link #keep kept},
+ * which deletes the source bytes that have been skipped since.
+ * Written characters are kept if they match the source at the current position and are inserted otherwise.
+ */
+public class EditRecorder extends Writer {
+	private final MemorySegment source;
+	private final long sourceSize;
+	private final EditList edits = new EditList();
+	private final StringBuilder pendingInsert = new StringBuilder();
+	/**
+	 * The offset in the source up to which the output has been recorded.
+	 */
+	private int position;
+	private boolean closed;
+
+	public EditRecorder(MemorySegment source) {
+		this.source = source;
+		this.sourceSize = source.byteSize();
+	}
+
+	/**
+	 * Records that the given source span follows in the output.
+	 * If the span starts before the current position, it is matched character by character instead.
+	 */
+	public void keep(int start, int end, String text) {
+		if (start < position) {
+			write(text, 0, text.length());
+			return;
+		}
+		flushInsert();
+		edits.delete(position, start);
+		position = end;
+	}
+
+	@Override
+	public void write(int c) {
+		writeChar((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			writeChar(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			writeChar(str.charAt(i));
+		}
+	}
+
+	private void writeChar(char c) {
+		int matched = matchSource(c);
+		if (matched == 0) {
+			pendingInsert.append(c);
+		} else {
+			flushInsert();
+			position += matched;
+		}
+	}
+
+	/**
+	 * @return the number of bytes that encode the character at the current position, or {@code 0} if they don't
+	 */
+	private int matchSource(char c) {
+		if (c < 0x80) {
+			return position < sourceSize && sourceByte(0) == c ? 1 : 0;
+		}
+		if (Character.isSurrogate(c)) {
+			// Left to the insertions, since pairs would have to be matched as a whole
+			return 0;
+		}
+		if (c < 0x800) {
+			return position + 1 < sourceSize
+					&& sourceByte(0) == (byte) (0xc0 | c >> 6)
+					&& sourceByte(1) == (byte) (0x80 | c & 0x3f)
+					? 2 : 0;
+		}
+		return position + 2 < sourceSize
+				&& sourceByte(0) == (byte) (0xe0 | c >> 12)
+				&& sourceByte(1) == (byte) (0x80 | c >> 6 & 0x3f)
+				&& sourceByte(2) == (byte) (0x80 | c & 0x3f)
+				? 3 : 0;
+	}
+
+	private byte sourceByte(int offset) {
+		return source.get(ValueLayout.JAVA_BYTE, position + offset);
+	}
+
+	private void flushInsert() {
+		if (!pendingInsert.isEmpty()) {
+			edits.insert(position, pendingInsert.toString());
+			pendingInsert.setLength(0);
+		}
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Deletes the rest of the source that hasn't been written.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		flushInsert();
+		edits.delete(position, (int) sourceSize);
+		position = (int) sourceSize;
+	}
+
+	/**
+	 * @return the recorded edits, which are only complete after closing
+	 */
+	public EditList edits() {
+		return edits;
+	}
+}
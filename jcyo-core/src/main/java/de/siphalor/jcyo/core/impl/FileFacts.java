@@ -0,0 +1,26 @@
+package de.siphalor.jcyo.core.impl;
+
+/**
+ * Conservative facts about the contents of a source file, as determined by the {@link DirectivePrefilter}.
+ * A {@code false} component means that the file definitely doesn't contain the respective construct,
+ * whereas {@code true} only means that it might.
+ *
+ * @param directives whether there are directive markers
+ * @param generatedDirectives whether there are {@code generated} directives
+ * @param disabledCode whether there are disabled code markers
+ * @param imports whether there are import statements
+ */
+public record FileFacts(boolean directives, boolean generatedDirectives, boolean disabledCode, boolean imports) {
+	public static final FileFacts UNKNOWN = new FileFacts(true, true, true, true);
+
+	public boolean hasMarkers() {
+		return directives || disabledCode;
+	}
+
+	/**
+	 * @return whether processing may change the file, since it has markers or imports that may be unused
+	 */
+	public boolean mayChange() {
+		return hasMarkers() || imports;
+	}
+}
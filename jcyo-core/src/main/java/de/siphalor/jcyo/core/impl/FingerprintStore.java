@@ -0,0 +1,228 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoChangeDetection;
+import org.jspecify.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps the fingerprints of processed files, so that files that haven't changed since can be skipped.
+ * <p>
+ * The fingerprints belong to a configuration, which covers everything besides the file content
+ * that influences the output. Fingerprints of a different configuration are discarded on load.
+ * <p>
+ * The processing costs of the files are kept as well, regardless of the configuration,
+ * so that parallel runs can schedule the most expensive files first.
+ * <p>
+ * Files may be checked and recorded concurrently, but loading and saving must not overlap with anything else.
+ */
+public class FingerprintStore {
+	private static final int FORMAT_VERSION = 2;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final JcyoChangeDetection changeDetection;
+	private final String configuration;
+	private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+	private final Map<String, Long> costs = new ConcurrentHashMap<>();
+	private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(
+			() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE)
+	);
+	private volatile boolean modified;
+
+	public FingerprintStore(JcyoChangeDetection changeDetection, String configuration) {
+		if (changeDetection == JcyoChangeDetection.FULL) {
+			throw new IllegalArgumentException("Full change detection doesn't use fingerprints");
+		}
+		this.changeDetection = changeDetection;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Loads the fingerprints from the given file, if it exists and belongs to the same change detection and configuration.
+	 * The costs are loaded in any case. Nothing is loaded from a corrupt file.
+	 */
+	public void load(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return;
+		}
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != FORMAT_VERSION) {
+				return;
+			}
+			String storedChangeDetection = input.readUTF();
+			String storedConfiguration = readLongString(input);
+			boolean matches = storedChangeDetection.equals(changeDetection.name())
+					&& storedConfiguration.equals(configuration);
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = input.readUTF();
+				var fingerprint = new Fingerprint(input.readLong(), input.readLong());
+				if (matches) {
+					fingerprints.put(key, fingerprint);
+				}
+			}
+			count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				costs.put(input.readUTF(), input.readLong());
+			}
+		} catch (IOException e) {
+			fingerprints.clear();
+			costs.clear();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the fingerprints to the given file, if they changed since they were loaded.
+	 */
+	public void save(Path file) throws IOException {
+		if (!modified) {
+			return;
+		}
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path tempFile = Files.createTempFile(directory, "." + file.getFileName(), ".tmp");
+		try {
+			try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				output.writeInt(FORMAT_VERSION);
+				output.writeUTF(changeDetection.name());
+				writeLongString(output, configuration);
+				output.writeInt(fingerprints.size());
+				for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue().size());
+					output.writeLong(entry.getValue().value());
+				}
+				output.writeInt(costs.size());
+				for (Map.Entry<String, Long> entry : costs.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue());
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		modified = false;
+	}
+
+	/**
+	 * Takes the fingerprint of the current content of the file.
+	 * Files are meant to be captured before they are read for processing,
+	 * so that changes during the processing aren't mistaken for processed content.
+	 *
+	 * @return the fingerprint or {@code null} if the file doesn't exist
+	 */
+	public @Nullable Fingerprint capture(Path file) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		long value = switch (changeDetection) {
+			case MODIFICATION_TIME_AND_SIZE -> modificationTime(attributes);
+			case CRC32C -> checksum(file);
+			case FULL -> 0;
+		};
+		return new Fingerprint(attributes.size(), value);
+	}
+
+	/**
+	 * Takes the fingerprint of a file right after it has been written with the given content.
+	 * The checksum is taken from the written content instead of the file, in case that has been changed since.
+	 *
+	 * @param checksum supplies the CRC32C checksum of the written content
+	 */
+	public Fingerprint captureWritten(Path file, LongSupplier checksum) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long value = switch (changeDetection) {
+			case MODIFICATION_TIME_AND_SIZE -> modificationTime(attributes);
+			case CRC32C -> checksum.getAsLong();
+			case FULL -> 0;
+		};
+		return new Fingerprint(attributes.size(), value);
+	}
+
+	/**
+	 * @return whether fingerprints of written files need the checksum of the written content
+	 */
+	public boolean usesChecksums() {
+		return changeDetection == JcyoChangeDetection.CRC32C;
+	}
+
+	/**
+	 * @param key the key of the file that is stable between runs, e.g. its relative path
+	 * @param fingerprint the {@link #capture captured} fingerprint of the file
+	 * @return whether the file still has the fingerprint that has been recorded for it
+	 */
+	public boolean isUnchanged(String key, @Nullable Fingerprint fingerprint) {
+		return fingerprint != null && fingerprint.equals(fingerprints.get(key));
+	}
+
+	/**
+	 * @param fingerprint the fingerprint of the processed content
+	 * @param costNanos the time it took to process the file
+	 */
+	public void record(String key, Fingerprint fingerprint, long costNanos) {
+		fingerprints.put(key, fingerprint);
+		costs.put(key, costNanos);
+		modified = true;
+	}
+
+	/**
+	 * @return the time in nanoseconds that it took to process the file when it was last recorded,
+	 * or {@code -1} if it hasn't been recorded yet
+	 */
+	public long cost(String key) {
+		return costs.getOrDefault(key, -1L);
+	}
+
+	public void forget(String key) {
+		if (fingerprints.remove(key) != null) {
+			modified = true;
+		}
+	}
+
+	private static long modificationTime(BasicFileAttributes attributes) {
+		return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+
+	private long checksum(Path file) throws IOException {
+		ByteBuffer buffer = readBuffers.get();
+		CRC32C crc = new CRC32C();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer.clear()) >= 0) {
+				crc.update(buffer.flip());
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static String readLongString(DataInput input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeLongString(DataOutput output, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * @param value the modification time in nanoseconds or the checksum, depending on the change detection
+	 */
+	public record Fingerprint(long size, long value) {}
+}
@@ -0,0 +1,58 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+
+/**
+ * A lexer that works on a fully decoded character array instead of reading from a {@link java.io.Reader}.
+ * Token texts are sliced directly out of the array.
+ * The produced tokens are identical to the ones of the {@link JcyoLexer}.
+ */
+public class JcyoArrayLexer extends JcyoIndexedLexer {
+	private final char[] chars;
+	private final BoundaryScanner scanner;
+
+	public JcyoArrayLexer(CharSourceBuffer source, JcyoOptions options) {
+		this(source.chars(), 0, source.length(), options);
+	}
+
+	public JcyoArrayLexer(char[] chars, int start, int end, JcyoOptions options) {
+		this(chars, start, end, options, BoundaryScanner.preferred());
+	}
+
+	JcyoArrayLexer(char[] chars, int start, int end, JcyoOptions options, BoundaryScanner scanner) {
+		super(start, end, options);
+		this.chars = chars;
+		this.scanner = scanner;
+	}
+
+	@Override
+	protected JcyoIndexedLexer forkAt(int start) {
+		return new JcyoArrayLexer(chars, start, end, options, scanner);
+	}
+
+	@Override
+	protected int unitAt(int index) {
+		return chars[index];
+	}
+
+	@Override
+	protected int codepointAt(int index) {
+		// Just like the Reader based lexer, this works on UTF-16 chars
+		return chars[index];
+	}
+
+	@Override
+	protected int codepointLength(int index) {
+		return 1;
+	}
+
+	@Override
+	protected int indexOfAny(int from, char first, char second) {
+		return scanner.indexOfAny(chars, from, end, first, second);
+	}
+
+	@Override
+	protected String slice(int start, int end) {
+		return new String(chars, start, end - start);
+	}
+}
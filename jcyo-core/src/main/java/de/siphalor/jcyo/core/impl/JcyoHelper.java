@@ -3,9 +3,12 @@ package de.siphalor.jcyo.core.impl;
 import de.siphalor.jcyo.core.api.JcyoOptions;
 import lombok.Getter;
 
+import java.nio.charset.StandardCharsets;
+
 public class JcyoHelper {
 	private static final String DISABLED_FOR_FLEX_END = " */";
 	private static final String DISABLED_FOR_FLEX_END_NO_WHITESPACE = "*/";
+	private static final byte[] DISABLED_FOR_FLEX_END_BYTES = DISABLED_FOR_FLEX_END.getBytes(StandardCharsets.UTF_8);
 
 	@Getter
 	private final String disabledForLine;
@@ -15,6 +18,15 @@ public class JcyoHelper {
 	private final String disabledForFlexStart;
 	@Getter
 	private final String disabledForFlexStartNoWhitespace;
+	// The UTF-8 encoded markers, which can be copied straight into byte outputs
+	@Getter
+	private final byte[] disabledForLineBytes;
+	@Getter
+	private final byte[] disabledForLineNoWhitespaceBytes;
+	@Getter
+	private final byte[] disabledForFlexStartBytes;
+	@Getter
+	private final byte[] disabledForFlexStartNoWhitespaceBytes;
 
 	public JcyoHelper(JcyoOptions options) {
 		var sb = new StringBuilder(5);
@@ -28,12 +40,21 @@ public class JcyoHelper {
 		this.disabledForFlexStartNoWhitespace = sb.toString();
 		sb.append(' ');
 		this.disabledForFlexStart = sb.toString();
+
+		this.disabledForLineBytes = disabledForLine.getBytes(StandardCharsets.UTF_8);
+		this.disabledForLineNoWhitespaceBytes = disabledForLineNoWhitespace.getBytes(StandardCharsets.UTF_8);
+		this.disabledForFlexStartBytes = disabledForFlexStart.getBytes(StandardCharsets.UTF_8);
+		this.disabledForFlexStartNoWhitespaceBytes = disabledForFlexStartNoWhitespace.getBytes(StandardCharsets.UTF_8);
 	}
 
 	public String disabledForFlexEnd() {
 		return DISABLED_FOR_FLEX_END;
 	}
 
+	public byte[] disabledForFlexEndBytes() {
+		return DISABLED_FOR_FLEX_END_BYTES;
+	}
+
 	public String disabledForFlexEndNoWhitespace() {
 		return DISABLED_FOR_FLEX_END_NO_WHITESPACE;
 	}
@@ -0,0 +1,538 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+import de.siphalor.jcyo.core.impl.token.*;
+import lombok.extern.apachecommons.CommonsLog;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Base class for lexers that work on fully loaded input by index.
+ * Positions are measured in code units of the underlying encoding.
+ * ASCII characters always occupy exactly one code unit and no other unit may look like one.
+ */
+@CommonsLog
+public abstract class JcyoIndexedLexer implements TokenStream, TokenTape.TextSource {
+	protected final JcyoOptions options;
+	protected final int end;
+
+	protected int pos;
+	private int tokenStart;
+	/**
+	 * Text that was consumed, but not emitted as a token.
+	 * It gets prepended to the next token that takes its text from the input, just like {@link JcyoLexer} does.
+	 */
+	private @Nullable String carry;
+	private int payload;
+	private boolean implicitEndPending = false;
+	private boolean inDisabledFlexComment = false;
+	private @Nullable VerbatimChunkRules chunkRules;
+	private final TapeChunker chunker = new TapeChunker();
+
+	protected JcyoIndexedLexer(int start, int end, JcyoOptions options) {
+		this.pos = start;
+		this.end = end;
+		this.options = options;
+		this.chunkRules = options.verbatimChunks() ? new VerbatimChunkRules() : null;
+	}
+
+	/**
+	 * Creates a lexer over the same input, starting at the given index in a clean state.
+	 */
+	protected abstract JcyoIndexedLexer forkAt(int start);
+
+	/**
+	 * Creates a lexer that speculatively starts at the given line start,
+	 * assuming that it is after the header of the file and outside any comment or literal.
+	 * Whether that holds is only known once the lexer before it {@link #isCleanSeam reaches} the same index.
+	 */
+	JcyoIndexedLexer speculativeAt(int lineStart) {
+		JcyoIndexedLexer lexer = forkAt(lineStart);
+		if (lexer.chunkRules != null) {
+			lexer.chunkRules = VerbatimChunkRules.afterHeader();
+		}
+		return lexer;
+	}
+
+	/**
+	 * @return whether this lexer stopped exactly at the given index in the state that {@link #speculativeAt} assumes
+	 */
+	boolean isCleanSeam(int lineStart) {
+		return pos == lineStart
+				&& carry == null
+				&& !implicitEndPending
+				&& !inDisabledFlexComment
+				&& chunker.isEmpty()
+				&& (chunkRules == null || chunkRules.isAfterHeader());
+	}
+
+	/**
+	 * @return the code unit at the given index, must be non-negative
+	 */
+	protected abstract int unitAt(int index);
+
+	/**
+	 * @return the codepoint that starts at the given index
+	 */
+	protected abstract int codepointAt(int index);
+
+	/**
+	 * @return the number of code units of the codepoint that starts at the given index
+	 */
+	protected abstract int codepointLength(int index);
+
+	protected abstract String slice(int start, int end);
+
+	/**
+	 * @return the index of the next unit in the range that equals one of the given ASCII characters, or {@link #end}
+	 * @see BoundaryScanner
+	 */
+	protected abstract int indexOfAny(int from, char first, char second);
+
+	@Override
+	public Token nextToken() {
+		return token(scan());
+	}
+
+	/**
+	 * Scans the batch in a loop of its own and creates the tokens right from the scanner state.
+	 */
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			TokenKind kind = scan();
+			tokens[offset + i] = token(kind);
+			if (kind == TokenKind.EOF) {
+				return i + 1;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Creates the token that has just been {@link #scan() scanned}.
+	 */
+	private Token token(TokenKind kind) {
+		return switch (kind) {
+			case EOF -> EofToken.instance();
+			case IDENTIFIER -> new IdentifierToken(take());
+			case KEYWORD -> JavaKeywordToken.of(JavaKeyword.byOrdinal(payload));
+			case OPERATOR -> OperatorToken.of(payload);
+			case WHITESPACE -> payload != 0
+					? WhitespaceToken.ofRun(payload, pos - tokenStart)
+					: new WhitespaceToken(slice(tokenStart, pos));
+			case LINE_BREAK -> new LineBreakToken(take());
+			case NUMBER_LITERAL -> new NumberLiteralToken(take());
+			case STRING_LITERAL -> new StringLiteralToken(take());
+			case CHARACTER_LITERAL -> new CharacterLiteralToken(take());
+			case LINE_COMMENT -> new PlainJavaCommentToken(take(), CommentStyle.LINE, false);
+			case LINE_JAVADOC -> new PlainJavaCommentToken(take(), CommentStyle.LINE, true);
+			case FLEX_COMMENT -> new PlainJavaCommentToken(take(), CommentStyle.FLEX, false);
+			case FLEX_JAVADOC -> new PlainJavaCommentToken(take(), CommentStyle.FLEX, true);
+			case LINE_DIRECTIVE_START -> new JcyoDirectiveStartToken(take(), CommentStyle.LINE);
+			case FLEX_DIRECTIVE_START -> new JcyoDirectiveStartToken(take(), CommentStyle.FLEX);
+			case LINE_DISABLED_START -> new JcyoDisabledStartToken(take(), CommentStyle.LINE);
+			case FLEX_DISABLED_START -> new JcyoDisabledStartToken(take(), CommentStyle.FLEX);
+			case END -> new JcyoEndToken(take());
+			case IMPLICIT_END -> JcyoEndToken.implicit();
+			case VERBATIM_CHUNK -> throw new IllegalStateException("Verbatim chunks are only produced by lexInto");
+		};
+	}
+
+	/**
+	 * Lexes all remaining input into the given tape, replacing its previous content.
+	 * If enabled in the options, spans of ordinary code are merged into {@link TokenKind#VERBATIM_CHUNK}s.
+	 */
+	public void lexInto(TokenTape tape) {
+		tape.reset(this);
+		lexUntil(tape, end);
+	}
+
+	/**
+	 * Appends the tokens that start before the given index to the tape.
+	 * Lexing can be continued with another call, pending chunks are only flushed at the end of the input.
+	 */
+	void lexUntil(TokenTape tape, int stop) {
+		while (pos < stop || stop >= end || implicitEndPending) {
+			TokenKind kind = scan();
+			if (chunkRules != null && chunkRules.accept(kind, payload) && carry == null) {
+				chunker.add(tape, kind, tokenStart, pos, payload);
+				continue;
+			}
+			chunker.flush(tape);
+			if (kind == TokenKind.EOF) {
+				return;
+			}
+			if (carry != null && kind.textual()) {
+				tape.add(kind, tokenStart, pos, payload, take());
+			} else {
+				tape.add(kind, tokenStart, pos, payload);
+			}
+		}
+	}
+
+	@Override
+	public String text(int start, int end) {
+		return slice(start, end);
+	}
+
+	/**
+	 * Advances over the next token.
+	 * The token spans from {@link #tokenStart} to {@link #pos} and its payload is stored in {@link #payload}.
+	 */
+	private TokenKind scan() {
+		if (implicitEndPending) {
+			implicitEndPending = false;
+			tokenStart = pos;
+			return TokenKind.IMPLICIT_END;
+		}
+
+		while (true) {
+			tokenStart = pos;
+			payload = 0;
+			int codepoint = peek();
+			switch (codepoint) {
+				case -1 -> {
+					return TokenKind.EOF;
+				}
+				case '/' -> {
+					pos++;
+					codepoint = peek();
+					if (codepoint == '/') {
+						pos++;
+						codepoint = peek();
+						if (codepoint == options.commandPrefix()) {
+							advance();
+							return TokenKind.LINE_DIRECTIVE_START;
+						} else if (codepoint == options.disabledPrefix()) {
+							advance();
+							return TokenKind.LINE_DISABLED_START;
+						} else if (codepoint == '/') {
+							pos++;
+							skipToLineBreak();
+							return TokenKind.LINE_JAVADOC;
+						} else {
+							skipToLineBreak();
+							return TokenKind.LINE_COMMENT;
+						}
+					} else if (codepoint == '*') {
+						pos++;
+						codepoint = peek();
+						if (codepoint == options.commandPrefix()) {
+							advance();
+							return TokenKind.FLEX_DIRECTIVE_START;
+						} else if (codepoint == options.disabledPrefix()) {
+							advance();
+							if (inDisabledFlexComment) {
+								log.warn(
+										"Encountered nested disabled flex comment."
+												+ "This is not supported and will be ignored."
+								);
+								carry = take();
+								continue;
+							}
+							inDisabledFlexComment = true;
+							return TokenKind.FLEX_DISABLED_START;
+						} else {
+							boolean javadoc = codepoint == '*';
+							if (javadoc) {
+								pos++;
+							}
+							skipToMultilineCommentEnd();
+							// A plain java flex comment implicitly ends a disabled flex comment
+							if (inDisabledFlexComment) {
+								inDisabledFlexComment = false;
+								implicitEndPending = true;
+							}
+							return javadoc ? TokenKind.FLEX_JAVADOC : TokenKind.FLEX_COMMENT;
+						}
+					} else {
+						carry = null;
+						payload = '/';
+						return TokenKind.OPERATOR;
+					}
+				}
+				case '*' -> {
+					pos++;
+					if (peek() == '/') {
+						pos++;
+						// this ends disabled flex comments implicitly
+						if (inDisabledFlexComment) {
+							inDisabledFlexComment = false;
+							implicitEndPending = true;
+						}
+						return TokenKind.END;
+					} else {
+						carry = null;
+						payload = '*';
+						return TokenKind.OPERATOR;
+					}
+				}
+				case '\'' -> {
+					pos++;
+					skipToInclusive('\'');
+					return TokenKind.CHARACTER_LITERAL;
+				}
+				case '"' -> {
+					pos++;
+					if (eatCodepoint() == '"') {
+						if (eatCodepoint() == '"') {
+							int quoteCount = 0;
+							while (true) {
+								int next = indexOfAny(pos, '"', '\\');
+								if (next != pos) {
+									quoteCount = 0;
+									pos = next;
+								}
+								codepoint = eatUnit();
+								if (codepoint == '\\') {
+									quoteCount = 0;
+									eatCodepoint();
+								} else if (codepoint == '"') {
+									if (++quoteCount >= 3) {
+										break;
+									}
+								} else if (codepoint == -1) {
+									break;
+								} else {
+									quoteCount = 0;
+								}
+							}
+						}
+						return TokenKind.STRING_LITERAL;
+					} else {
+						while (true) {
+							pos = indexOfAny(pos, '"', '\\');
+							codepoint = eatUnit();
+							if (codepoint == '\\') {
+								eatCodepoint();
+							} else if (codepoint == '"' || codepoint == -1) {
+								return TokenKind.STRING_LITERAL;
+							}
+						}
+					}
+				}
+				case '\n' -> {
+					pos++;
+					if (peek() == '\r') {
+						pos++;
+					}
+					payload = '\n';
+					return TokenKind.LINE_BREAK;
+				}
+				case '\r' -> {
+					pos++;
+					if (peek() == '\n') {
+						pos++;
+					}
+					payload = '\r';
+					return TokenKind.LINE_BREAK;
+				}
+				case '.' -> {
+					pos++;
+					if (CharClassTable.isDigit(peek())) {
+						skipNumeric();
+						return TokenKind.NUMBER_LITERAL;
+					} else {
+						payload = '.';
+						return TokenKind.OPERATOR;
+					}
+				}
+				default -> {
+					if (CharClassTable.isJavaIdentifierStart(codepoint)) {
+						do {
+							advance();
+						} while (CharClassTable.isJavaIdentifierPart(peek()));
+						if (carry == null) {
+							JavaKeyword keyword = keywordAt(tokenStart, pos);
+							if (keyword != null) {
+								payload = keyword.ordinal();
+								return TokenKind.KEYWORD;
+							}
+						}
+						return TokenKind.IDENTIFIER;
+					} else if (CharClassTable.isWhitespace(codepoint)) {
+						advance();
+						boolean uniform = codepoint < 0x80;
+						while (true) {
+							int next = peek();
+							if (!CharClassTable.isInlineWhitespace(next)) {
+								break;
+							}
+							uniform &= next == codepoint;
+							advance();
+						}
+						payload = uniform ? codepoint : 0;
+						return TokenKind.WHITESPACE;
+					} else if (CharClassTable.isDigit(codepoint)) {
+						skipNumeric();
+						return TokenKind.NUMBER_LITERAL;
+					} else {
+						advance();
+						payload = codepoint;
+						return TokenKind.OPERATOR;
+					}
+				}
+			}
+		}
+	}
+
+	private @Nullable JavaKeyword keywordAt(int start, int end) {
+		int length = end - start;
+		if (length > JavaKeyword.MAX_LENGTH) {
+			return null;
+		}
+		boolean multiple = length > 1;
+		JavaKeyword keyword = JavaKeyword.candidate(
+				unitAt(start),
+				multiple ? unitAt(start + 1) : 0,
+				multiple ? unitAt(end - 2) : 0,
+				unitAt(end - 1),
+				length
+		);
+		if (keyword != null && regionMatches(start, keyword.text())) {
+			return keyword;
+		}
+		return null;
+	}
+
+	private boolean regionMatches(int start, String ascii) {
+		for (int i = 0; i < ascii.length(); i++) {
+			if (unitAt(start + i) != ascii.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skipToMultilineCommentEnd() {
+		while (true) {
+			pos = indexOfAny(pos, '*', '*');
+			if (pos >= end) {
+				return;
+			}
+			pos++;
+			// Just like the streaming lexer, the code point after a star is consumed in any case
+			if (eatCodepoint() == '/') {
+				return;
+			}
+		}
+	}
+
+	private void skipNumeric() {
+		while (pos < end) {
+			int codepoint = codepointAt(pos);
+			if (CharClassTable.isNumericPart(codepoint)) {
+				pos += codepointLength(pos);
+			} else {
+				break;
+			}
+		}
+	}
+
+	private void skipToInclusive(char stop) {
+		pos = indexOfAny(pos, stop, stop);
+		if (pos < end) {
+			pos++;
+		}
+	}
+
+	private void skipToLineBreak() {
+		pos = indexOfAny(pos, '\n', '\r');
+	}
+
+	private int eatUnit() {
+		if (pos < end) {
+			return unitAt(pos++);
+		}
+		return -1;
+	}
+
+	/**
+	 * Consumes a whole code point, for the places where the streaming lexer consumes one regardless of its value.
+	 */
+	private int eatCodepoint() {
+		if (pos < end) {
+			int codepoint = codepointAt(pos);
+			pos += codepointLength(pos);
+			return codepoint;
+		}
+		return -1;
+	}
+
+	private void advance() {
+		if (pos < end) {
+			pos += codepointLength(pos);
+		}
+	}
+
+	private int peek() {
+		if (pos < end) {
+			return codepointAt(pos);
+		}
+		return -1;
+	}
+
+	private String take() {
+		String text = slice(tokenStart, pos);
+		if (carry != null) {
+			text = carry + text;
+			carry = null;
+		}
+		return text;
+	}
+
+	/**
+	 * Merges consecutive chunkable tokens, but keeps single tokens and trailing whitespace as they are.
+	 */
+	private static final class TapeChunker {
+		private int tokens;
+		private TokenKind firstKind = TokenKind.EOF;
+		private int firstPayload;
+		private int start;
+		private int end;
+		private int whitespaceStart = -1;
+		private int whitespaceEnd;
+		private int whitespacePayload;
+
+		boolean isEmpty() {
+			return tokens == 0 && whitespaceStart < 0;
+		}
+
+		void add(TokenTape tape, TokenKind kind, int tokenStart, int tokenEnd, int payload) {
+			if (kind == TokenKind.WHITESPACE) {
+				if (tokens == 0) {
+					tape.add(kind, tokenStart, tokenEnd, payload);
+				} else {
+					// Whitespace is lexed in runs, so there is never more than one trailing whitespace token
+					whitespaceStart = tokenStart;
+					whitespaceEnd = tokenEnd;
+					whitespacePayload = payload;
+				}
+				return;
+			}
+			if (tokens == 0) {
+				start = tokenStart;
+				firstKind = kind;
+				firstPayload = payload;
+			}
+			end = tokenEnd;
+			tokens++;
+			whitespaceStart = -1;
+		}
+
+		void flush(TokenTape tape) {
+			if (tokens == 1) {
+				tape.add(firstKind, start, end, firstPayload);
+			} else if (tokens > 1) {
+				tape.add(TokenKind.VERBATIM_CHUNK, start, end, 0);
+			}
+			if (whitespaceStart >= 0) {
+				tape.add(TokenKind.WHITESPACE, whitespaceStart, whitespaceEnd, whitespacePayload);
+			}
+			tokens = 0;
+			whitespaceStart = -1;
+		}
+	}
+}
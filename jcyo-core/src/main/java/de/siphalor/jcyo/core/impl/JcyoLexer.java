@@ -17,6 +17,7 @@ public class JcyoLexer implements AutoCloseable, TokenStream {
 	private final JcyoOptions options;
 
 	private final StringBuilder buffer = new StringBuilder();
+	private final StringBuilder whitespaceBuffer = new StringBuilder();
 
 	private int peek = -1;
 	private @Nullable RepresentableToken nextToken = null;
@@ -88,7 +89,7 @@ public class JcyoLexer implements AutoCloseable, TokenStream {
 						}
 					} else {
 						clearBuffer();
-						return new OperatorToken('/');
+						return OperatorToken.of('/');
 					}
 				}
 				case '*' -> {
@@ -103,7 +104,7 @@ public class JcyoLexer implements AutoCloseable, TokenStream {
 						return new JcyoEndToken(takeFromBuffer());
 					} else {
 						clearBuffer();
-						return new OperatorToken('*');
+						return OperatorToken.of('*');
 					}
 				}
 				case '\'' -> {
@@ -164,35 +165,44 @@ public class JcyoLexer implements AutoCloseable, TokenStream {
 				}
 				case '.' -> {
 					eat();
-					if (Character.isDigit(peek())) {
+					if (CharClassTable.isDigit(peek())) {
 						buffer.appendCodePoint('.');
 						chompNumeric();
 						return new NumberLiteralToken(takeFromBuffer());
 					} else {
-						return new OperatorToken('.');
+						return OperatorToken.of('.');
 					}
 				}
 				default -> {
-					if (Character.isJavaIdentifierStart(codepoint)) {
+					if (CharClassTable.isJavaIdentifierStart(codepoint)) {
 						do {
 							buffer.appendCodePoint(eat());
-						} while (Character.isJavaIdentifierPart(peek()));
-						String identifier = takeFromBuffer();
-						JavaKeyword keyword = JavaKeyword.getKeyword(identifier);
+						} while (CharClassTable.isJavaIdentifierPart(peek()));
+						JavaKeyword keyword = JavaKeyword.getKeyword(buffer);
 						if (keyword != null) {
-							return new JavaKeywordToken(keyword);
+							clearBuffer();
+							return JavaKeywordToken.of(keyword);
 						} else {
-							return new IdentifierToken(identifier);
+							return new IdentifierToken(takeFromBuffer());
 						}
-					} else if (Character.isWhitespace(codepoint)) {
+					} else if (CharClassTable.isWhitespace(codepoint)) {
 						eat();
-						return new WhitespaceToken(codepoint);
-					} else if (Character.isDigit(codepoint)) {
+						if (!CharClassTable.isInlineWhitespace(peek())) {
+							return WhitespaceToken.of(codepoint);
+						}
+						// Whitespace is collected separately, since it must not take text from the buffer
+						whitespaceBuffer.setLength(0);
+						whitespaceBuffer.appendCodePoint(codepoint);
+						do {
+							whitespaceBuffer.appendCodePoint(eat());
+						} while (CharClassTable.isInlineWhitespace(peek()));
+						return WhitespaceToken.of(whitespaceBuffer);
+					} else if (CharClassTable.isDigit(codepoint)) {
 						chompNumeric();
 						return new NumberLiteralToken(takeFromBuffer());
 					} else {
 						eat();
-						return new OperatorToken(codepoint);
+						return OperatorToken.of(codepoint);
 					}
 				}
 			}
@@ -219,7 +229,7 @@ public class JcyoLexer implements AutoCloseable, TokenStream {
 			int codepoint = peek();
 			if (codepoint == -1) {
 				break;
-			} else if (Character.isDigit(codepoint) || codepoint == '.' || Character.isLetter(codepoint)) {
+			} else if (CharClassTable.isNumericPart(codepoint)) {
 				buffer.appendCodePoint(eat());
 			} else {
 				break;
@@ -1,29 +1,90 @@
 package de.siphalor.jcyo.core.impl;
 
+import de.siphalor.jcyo.core.api.JcyoChangeDetection;
+import de.siphalor.jcyo.core.api.JcyoLexerMode;
 import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.api.JcyoPipelineStage;
 import de.siphalor.jcyo.core.api.JcyoProcessingException;
+import de.siphalor.jcyo.core.api.JcyoStatistics;
 import de.siphalor.jcyo.core.api.JcyoVariables;
-import de.siphalor.jcyo.core.impl.stream.TokenBuffer;
+import de.siphalor.jcyo.core.impl.FingerprintStore.Fingerprint;
+import de.siphalor.jcyo.core.impl.stream.SourceSpans;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.stream.TokenPump;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
 import de.siphalor.jcyo.core.impl.transform.*;
+import lombok.Getter;
 import org.jspecify.annotations.Nullable;
 
 import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
 
 public class JcyoProcessor {
+	private static final int MIN_PARALLEL_LEXING_PART_SIZE = 512 * 1024;
+	private static final int PIPELINE_RING_CAPACITY = 4096;
+	private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+	private static final int UPDATE_OUTPUT_BUFFER = 0;
+	private static final int CLEAN_OUTPUT_BUFFER = 1;
+
 	private final JcyoOptions options;
 	private final Path baseDirectory;
 	private final @Nullable Path cleanOutputDirectory;
 	private final JcyoDirectiveApplier directiveApplier;
 	private final UnusedImportDisabler unusedImportDisabler;
+	private final CharSourceBuffer sourceBuffer = new CharSourceBuffer();
+	private final TokenTape tokenTape = new TokenTape();
+	private final DirectivePrefilter directivePrefilter;
+	/**
+	 * The pumps of the file that is currently processed, which are closed once it is done.
+	 */
+	private final List<TokenPump> pumps = new ArrayList<>();
+	private @Nullable ExecutorService pipelineExecutor;
+	private final ByteOutputBuffer outputBuffer = new ByteOutputBuffer();
+	private final byte[] @Nullable [] outputBuffers = new byte[2][];
+	/**
+	 * The update of the mapped file that is currently processed, which is committed once it is unmapped.
+	 */
+	private @Nullable PendingUpdate pendingUpdate;
+	/**
+	 * The checksum of the content of the update of the current file, if fingerprints need it.
+	 */
+	private @Nullable Checksum updateChecksum;
+	/**
+	 * The fingerprint of the content that the current file has been updated with, if it has been.
+	 */
+	private @Nullable Fingerprint writtenFingerprint;
+	/**
+	 * The UTF-8 source of the current file, if the outputs copy the tokens that pass through unchanged from it.
+	 */
+	private @Nullable MemorySegment copiedSource;
+	/**
+	 * The spans of the tokens in the {@link #copiedSource}.
+	 */
+	private @Nullable SourceSpans copiedSpans;
+	private final @Nullable FingerprintStore fingerprintStore;
+	@Getter
+	private final JcyoStatistics statistics;
 
 	public JcyoProcessor(
 			JcyoVariables variables,
@@ -36,20 +97,173 @@ public class JcyoProcessor {
 		this.cleanOutputDirectory = cleanOutputDirectory;
 		this.directiveApplier = new JcyoDirectiveApplier(variables);
 		this.unusedImportDisabler = new UnusedImportDisabler();
+		this.directivePrefilter = new DirectivePrefilter(options);
+		this.fingerprintStore = createFingerprintStore(variables, options, cleanOutputDirectory);
+		this.statistics = new JcyoStatistics();
+	}
+
+	private JcyoProcessor(JcyoProcessor prototype) {
+		this.options = prototype.options;
+		this.baseDirectory = prototype.baseDirectory;
+		this.cleanOutputDirectory = prototype.cleanOutputDirectory;
+		this.directiveApplier = prototype.directiveApplier;
+		this.unusedImportDisabler = prototype.unusedImportDisabler;
+		this.directivePrefilter = new DirectivePrefilter(options);
+		this.fingerprintStore = prototype.fingerprintStore;
+		this.statistics = prototype.statistics;
+	}
+
+	/**
+	 * Creates a processor that shares the configuration, the statistics and the fingerprints with this one,
+	 * but has buffers of its own, so that both can process files concurrently.
+	 * A single processor must only be used by one thread at a time.
+	 */
+	public JcyoProcessor fork() {
+		return new JcyoProcessor(this);
+	}
+
+	private static @Nullable FingerprintStore createFingerprintStore(
+			JcyoVariables variables,
+			JcyoOptions options,
+			@Nullable Path cleanOutputDirectory
+	) {
+		if (options.changeDetection() == JcyoChangeDetection.FULL) {
+			return null;
+		}
+		// Only what influences the outputs, so that unrelated options keep the fingerprints
+		String configuration = new TreeMap<>(variables.asMap())
+				+ "\n" + options.outputConfiguration()
+				+ "\n" + cleanOutputDirectory;
+		var store = new FingerprintStore(options.changeDetection(), configuration);
+		Path fingerprintFile = options.fingerprintFile();
+		if (fingerprintFile != null) {
+			try {
+				store.load(fingerprintFile);
+			} catch (IOException ignored) {
+				// All files are simply processed again
+			}
+		}
+		return store;
 	}
 
 	public void process(Path inputFile) throws JcyoProcessingException {
+		Path absoluteInput = resolveInput(inputFile);
+		File cleanOutput = getCleanOutputFileForInputPath(absoluteInput);
+		Fingerprint fingerprint = captureFingerprint(absoluteInput);
+		if (skipsUnchanged(absoluteInput, cleanOutput, fingerprint)) {
+			return;
+		}
+		long start = System.nanoTime();
+		writtenFingerprint = null;
+		processFile(absoluteInput.toFile(), cleanOutput);
+		recordFingerprint(
+				absoluteInput,
+				writtenFingerprint != null ? writtenFingerprint : fingerprint,
+				System.nanoTime() - start
+		);
+	}
+
+	Path resolveInput(Path inputFile) {
 		Path absoluteInput = inputFile.normalize().toAbsolutePath();
 		if (!absoluteInput.startsWith(baseDirectory)) {
 			throw new IllegalArgumentException("Input files must be inside the base directory: " + baseDirectory);
 		}
-		File input = absoluteInput.toFile();
-		File cleanOutput = getCleanOutputFileForInputPath(absoluteInput);
+		return absoluteInput;
+	}
 
-		processFile(input, cleanOutput);
+	/**
+	 * Takes the fingerprint of the input file before it is read,
+	 * so that changes during the processing are noticed by the next run.
+	 *
+	 * @return the fingerprint or {@code null} if fingerprints aren't used or the file doesn't exist
+	 */
+	@Nullable Fingerprint captureFingerprint(Path absoluteInput) throws JcyoProcessingException {
+		if (fingerprintStore == null) {
+			return null;
+		}
+		try {
+			return fingerprintStore.capture(absoluteInput);
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to fingerprint input file: " + absoluteInput, e);
+		}
 	}
 
-	private @Nullable File getCleanOutputFileForInputPath(Path inputPath) {
+	/**
+	 * Checks whether the input file is unchanged according to its fingerprint and records it as such.
+	 * Otherwise, its fingerprint is forgotten until it is {@link #recordFingerprint recorded} again after processing.
+	 */
+	boolean skipsUnchanged(Path absoluteInput, @Nullable File cleanOutput, @Nullable Fingerprint fingerprint) {
+		if (fingerprintStore == null) {
+			return false;
+		}
+		String fingerprintKey = baseDirectory.relativize(absoluteInput).toString();
+		if ((cleanOutput == null || cleanOutput.isFile()) && fingerprintStore.isUnchanged(fingerprintKey, fingerprint)) {
+			statistics.recordUnchangedFile();
+			return true;
+		}
+		fingerprintStore.forget(fingerprintKey);
+		return false;
+	}
+
+	/**
+	 * @param fingerprint the fingerprint that has been captured before processing,
+	 * or the one of the written content if the input has been updated
+	 */
+	void recordFingerprint(Path absoluteInput, @Nullable Fingerprint fingerprint, long costNanos) {
+		if (fingerprintStore != null && fingerprint != null) {
+			fingerprintStore.record(baseDirectory.relativize(absoluteInput).toString(), fingerprint, costNanos);
+		}
+	}
+
+	/**
+	 * Takes the fingerprint of an input file that has just been updated with the given content.
+	 *
+	 * @return the fingerprint or {@code null} if fingerprints aren't used or it couldn't be taken
+	 */
+	@Nullable Fingerprint captureWrittenFingerprint(Path file, ByteOutputBuffer content) {
+		return captureWrittenFingerprint(file, content::checksum);
+	}
+
+	private @Nullable Fingerprint captureWrittenFingerprint(Path file, LongSupplier checksum) {
+		if (fingerprintStore == null) {
+			return null;
+		}
+		try {
+			return fingerprintStore.captureWritten(file, checksum);
+		} catch (IOException e) {
+			// The fingerprint from before the update is recorded instead, which just leads to processing the file again
+			return null;
+		}
+	}
+
+	/**
+	 * @return the time in nanoseconds that it took to process the file in a previous run,
+	 * or {@code -1} if it is unknown
+	 */
+	public long recordedCost(Path inputFile) {
+		if (fingerprintStore == null) {
+			return -1;
+		}
+		return fingerprintStore.cost(baseDirectory.relativize(resolveInput(inputFile)).toString());
+	}
+
+	/**
+	 * Persists the fingerprints of the processed files to the {@link JcyoOptions#fingerprintFile() fingerprint file},
+	 * if there is one.
+	 */
+	public void saveFingerprints() throws JcyoProcessingException {
+		Path fingerprintFile = options.fingerprintFile();
+		if (fingerprintStore == null || fingerprintFile == null) {
+			return;
+		}
+		try {
+			fingerprintStore.save(fingerprintFile);
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to save fingerprints to: " + fingerprintFile, e);
+		}
+	}
+
+	@Nullable File getCleanOutputFileForInputPath(Path inputPath) {
 		if (cleanOutputDirectory == null) {
 			return null;
 		}
@@ -57,36 +271,38 @@ public class JcyoProcessor {
 	}
 
 	void processFile(File input, @Nullable File cleanOutput) throws JcyoProcessingException {
+		statistics.recordProcessedFile();
+		if (options.lexerMode() == JcyoLexerMode.MAPPED_UTF8) {
+			processMappedFile(input, cleanOutput);
+			return;
+		}
+		FileFacts facts;
+		try {
+			facts = scanFacts(input.toPath());
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to read input file: " + input, e);
+		}
+		if (options.skipDirectiveFreeFiles() && !facts.mayChange()) {
+			passThroughFile(input, cleanOutput);
+			return;
+		}
+
 		InputStream inputStream = null;
 		try {
-			MessageDigest digest = null;
 			inputStream = new FileInputStream(input);
-			if (options.updateInput()) {
-				digest = MessageDigest.getInstance("SHA-1");
-				inputStream = new DigestInputStream(inputStream, digest);
-			}
 
 			TokenStream processedTokenStream = getProcessedTokensStreamForFile(
-					new InputStreamReader(inputStream, StandardCharsets.UTF_8)
+					input,
+					new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+					(int) Math.min(input.length(), Integer.MAX_VALUE - 8),
+					facts
 			);
 
-			if (options.updateInput()) {
-				if (cleanOutput == null) {
-					updateFileOnChanged(input, digest, processedTokenStream);
-				} else {
-					TokenBuffer copy = new TokenBuffer();
-					updateFileOnChanged(input, digest, copy.copying(processedTokenStream));
-					writeToFile(cleanOutput, new JcyoCleaner(copy));
-				}
-			} else {
-				assert cleanOutput != null;
-				writeToFile(cleanOutput, processedTokenStream);
-			}
+			writeProcessedTokens(input, cleanOutput, processedTokenStream);
 		} catch (IOException e) {
 			throw new JcyoProcessingException("Failed to read input file: " + input, e);
-		} catch (NoSuchAlgorithmException e) {
-			throw new JcyoProcessingException("Failed to initialize SHA-1 digest", e);
 		} finally {
+			closePumps();
 			assert inputStream != null;
 			try {
 				inputStream.close();
@@ -94,74 +310,639 @@ public class JcyoProcessor {
 		}
 	}
 
-	TokenStream getProcessedTokensStreamForFile(Reader input) throws JcyoProcessingException {
-		try (var lexer = new JcyoLexer(input, options)) {
+	/**
+	 * Processes a file whose UTF-8 content has already been read into memory,
+	 * rendering the updated input and the clean output into the given buffers instead of writing them.
+	 * The content is lexed like a {@link JcyoLexerMode#MAPPED_UTF8} file, regardless of the lexer mode.
+	 *
+	 * @param updateOutput the buffer for the updated input, or {@code null} if the input isn't updated
+	 * @param cleanOutput the buffer for the clean output, or {@code null} if there is none
+	 * @return {@code false} if the file has been passed through, so that both outputs equal the input
+	 * and nothing has been rendered
+	 */
+	boolean render(
+			File input,
+			MemorySegment content,
+			@Nullable ByteOutputBuffer updateOutput,
+			@Nullable ByteOutputBuffer cleanOutput
+	) throws JcyoProcessingException {
+		statistics.recordProcessedFile();
+		FileFacts facts = scanFacts(content);
+		if (options.skipDirectiveFreeFiles() && !facts.mayChange()) {
+			statistics.recordDirectiveFreeFile();
+			return false;
+		}
 
-			TokenStream streamWithOldStuffRemoved = new GeneratedAndDisabledTokenRemover(
-					new JcyoUnpadder(lexer),
-					options
-			);
-			TokenStream streamWithDirectivesApplied = directiveApplier.apply(streamWithOldStuffRemoved);
-			return unusedImportDisabler.apply(streamWithDirectivesApplied);
+		lexToTape(new JcyoUtf8Lexer(content, options), (int) content.byteSize());
+		SourceSpans spans = tokenTape.sourceSpans();
+		TokenStream processedTokenStream = getProcessedTokenStream(
+				tokenTape.stream(),
+				tokenTape.spannedStream(spans),
+				input,
+				determineSkippedStages(facts),
+				false
+		);
+		copiedSource = content;
+		copiedSpans = spans;
+		try {
+			if (updateOutput != null && cleanOutput != null) {
+				writeTee(updateOutput.reset(), cleanOutput.reset(), processedTokenStream);
+			} else if (updateOutput != null) {
+				writeTokens(updateOutput.reset(), processedTokenStream);
+			} else if (cleanOutput != null) {
+				writeTokens(cleanOutput.reset(), processedTokenStream);
+			}
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to render outputs of input file: " + input, e);
+		} finally {
+			copiedSource = null;
+			copiedSpans = null;
+		}
+		return true;
+	}
 
-		} catch (JcyoParseException e) {
-			throw new JcyoProcessingException("Failed to parse input file: " + input, e);
-		} catch (Exception e) {
-			throw new JcyoProcessingException("Unexpected exception for input file: " + input, e);
+	private void processMappedFile(File input, @Nullable File cleanOutput) throws JcyoProcessingException {
+		try (var channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new JcyoProcessingException("Input file is too large to be mapped: " + input);
+			}
+			// Parallel lexing and pipelined stages access the mapping from other threads
+			boolean shared = lexesInParallel((int) size) || pipelinesStages(size);
+			try (var arena = shared ? Arena.ofShared() : Arena.ofConfined()) {
+				MemorySegment segment = size == 0
+						? MemorySegment.ofArray(new byte[0])
+						: channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+
+				FileFacts facts = scanFacts(segment);
+				if (options.skipDirectiveFreeFiles() && !facts.mayChange()) {
+					passThroughFile(input, cleanOutput);
+					return;
+				}
+
+				lexToTape(new JcyoUtf8Lexer(segment, options), (int) size);
+				// The outputs take the tokens that pass through the stages unchanged straight from the source
+				SourceSpans spans = tokenTape.sourceSpans();
+				try {
+					TokenStream processedTokenStream = getProcessedTokenStream(
+							tokenTape.stream(),
+							tokenTape.spannedStream(spans),
+							input,
+							determineSkippedStages(facts),
+							pipelinesStages(size)
+					);
+					if (options.editListRendering()) {
+						writeProcessedEdits(input, cleanOutput, channel, segment, spans, processedTokenStream);
+					} else {
+						copiedSource = segment;
+						copiedSpans = spans;
+						writeProcessedTokens(input, cleanOutput, processedTokenStream);
+					}
+				} finally {
+					copiedSource = null;
+					copiedSpans = null;
+					closePumps();
+				}
+			}
+			commitPendingUpdate();
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to read input file: " + input, e);
+		} finally {
+			discardPendingUpdate();
 		}
 	}
 
-	void updateFileOnChanged(File file, MessageDigest oldDigest, TokenStream tokenStream) throws JcyoProcessingException {
-		File tempFile = createTempFileForOutput(file);
+	private FileFacts scanFacts(Path path) throws IOException {
+		if (options.elideStages()) {
+			return directivePrefilter.scanFacts(path);
+		}
+		if (options.skipDirectiveFreeFiles() && !directivePrefilter.mayContainMarkers(path)) {
+			// Only the unused imports remain to be disabled
+			return new FileFacts(false, false, false, true);
+		}
+		return FileFacts.UNKNOWN;
+	}
 
-		MessageDigest newDigest;
-		try {
-			newDigest = MessageDigest.getInstance(oldDigest.getAlgorithm());
-		} catch (NoSuchAlgorithmException e) {
-			throw new JcyoProcessingException("Missing digest algorithm: " + oldDigest.getAlgorithm(), e);
+	private FileFacts scanFacts(MemorySegment segment) {
+		if (options.elideStages()) {
+			return directivePrefilter.scanFacts(segment);
+		}
+		if (options.skipDirectiveFreeFiles() && !directivePrefilter.mayContainMarkers(segment)) {
+			// Only the unused imports remain to be disabled
+			return new FileFacts(false, false, false, true);
 		}
+		return FileFacts.UNKNOWN;
+	}
 
-		try (var outputStream = new DigestOutputStream(new FileOutputStream(tempFile), newDigest)) {
-			try (var writer = new TokenWriter(
-					new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)),
-					options
-			)) {
-				writer.writeAll(tokenStream);
+	/**
+	 * Determines the pipeline stages that can't change the output of a file with the given facts
+	 * and records them in the statistics.
+	 */
+	private Set<JcyoPipelineStage> determineSkippedStages(FileFacts facts) {
+		Set<JcyoPipelineStage> skippedStages = EnumSet.noneOf(JcyoPipelineStage.class);
+		if (!facts.disabledCode()) {
+			skippedStages.add(JcyoPipelineStage.UNPADDING);
+			if (!facts.generatedDirectives()) {
+				skippedStages.add(JcyoPipelineStage.GENERATED_AND_DISABLED_REMOVAL);
 			}
+		}
+		if (!facts.directives()) {
+			skippedStages.add(JcyoPipelineStage.DIRECTIVE_APPLICATION);
+		}
+		if (!facts.imports()) {
+			skippedStages.add(JcyoPipelineStage.UNUSED_IMPORT_DISABLING);
+		}
+		// The fused transformation can't leave out single steps
+		if (options.fusedTransformation()
+				&& !skippedStages.contains(JcyoPipelineStage.GENERATED_AND_DISABLED_REMOVAL)) {
+			skippedStages.remove(JcyoPipelineStage.UNPADDING);
+			skippedStages.remove(JcyoPipelineStage.DIRECTIVE_APPLICATION);
+		}
+		statistics.recordSkippedStages(skippedStages);
+		return skippedStages;
+	}
+
+	/**
+	 * Handles a file without any jcyo markers or imports.
+	 * The input file stays as is and the clean output is a byte-for-byte copy.
+	 */
+	private void passThroughFile(File input, @Nullable File cleanOutput) throws JcyoProcessingException {
+		statistics.recordDirectiveFreeFile();
+		if (cleanOutput == null) {
+			return;
+		}
+		cleanOutput.getParentFile().mkdirs();
+		try {
+			Files.copy(input.toPath(), cleanOutput.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		} catch (IOException e) {
-			throw new JcyoProcessingException("Failed to write to temporary output file: " + tempFile, e);
+			throw new JcyoProcessingException("Failed to copy input file: " + input + " to: " + cleanOutput, e);
 		}
+	}
 
-		if (!Arrays.equals(newDigest.digest(), oldDigest.digest())) {
-			if (!file.delete()) {
-				throw new JcyoProcessingException("Failed to delete file: " + file);
+	/**
+	 * Like {@link #writeProcessedTokens}, but renders the outputs as edits against the mapped input file.
+	 * An input file without edits is left untouched.
+	 */
+	private void writeProcessedEdits(
+			File input,
+			@Nullable File cleanOutput,
+			FileChannel inputChannel,
+			MemorySegment inputSegment,
+			SourceSpans spans,
+			TokenStream processedTokenStream
+	) throws JcyoProcessingException {
+		if (options.updateInput()) {
+			EditList edits;
+			if (cleanOutput == null) {
+				edits = recordEdits(inputSegment, spans, processedTokenStream);
+			} else {
+				var writer = new EditListTokenWriter(new EditRecorder(inputSegment), spans, options);
+				EditList cleanEdits;
+				try (writer) {
+					cleanEdits = recordEdits(
+							inputSegment,
+							spans,
+							new JcyoCleaner(new TokenTee(processedTokenStream, writer))
+					);
+				} catch (IOException | UncheckedIOException e) {
+					throw new JcyoProcessingException("Failed to record edits", e);
+				}
+				edits = writer.edits();
+				writeToFile(cleanOutput, outputStream -> renderEdits(cleanEdits, inputChannel, outputStream));
 			}
-			try {
-				Files.move(tempFile.toPath(), file.toPath());
-			} catch (IOException e) {
-				throw new JcyoProcessingException(
-						"Failed to move temporary output file: " + tempFile + " to: " + file, e
+			if (!edits.isEmpty()) {
+				updateFileOnChanged(input, outputStream -> renderEdits(edits, inputChannel, outputStream));
+			}
+		} else {
+			assert cleanOutput != null;
+			EditList edits = recordEdits(inputSegment, spans, processedTokenStream);
+			writeToFile(cleanOutput, outputStream -> renderEdits(edits, inputChannel, outputStream));
+		}
+	}
+
+	private void writeProcessedTokens(
+			File input,
+			@Nullable File cleanOutput,
+			TokenStream processedTokenStream
+	) throws JcyoProcessingException {
+		if (options.updateInput()) {
+			if (cleanOutput == null) {
+				updateFileOnChanged(input, processedTokenStream);
+			} else {
+				updateFileOnChanged(input, outputStream -> writeTee(outputStream, cleanOutput, processedTokenStream));
+			}
+		} else {
+			assert cleanOutput != null;
+			writeToFile(cleanOutput, processedTokenStream);
+		}
+	}
+
+	/**
+	 * The input reader is only read during the output pass.
+	 * In streaming mode, the file is opened a second time for the scan pass of the unused import detection.
+	 */
+	TokenStream getProcessedTokensStreamForFile(
+			File file,
+			Reader input,
+			int sizeHint,
+			FileFacts facts
+	) throws JcyoProcessingException {
+		Set<JcyoPipelineStage> skippedStages = determineSkippedStages(facts);
+		boolean pipelined = pipelinesStages(sizeHint);
+		try {
+			if (options.lexerMode() == JcyoLexerMode.STREAMING) {
+				TokenStream lexer = createStreamingLexer(input);
+				if (pipelined) {
+					lexer = pump(lexer);
+				}
+				if (skippedStages.contains(JcyoPipelineStage.UNUSED_IMPORT_DISABLING)) {
+					return getProcessedTokenStream(null, lexer, file, skippedStages, pipelined);
+				}
+				try (Reader scanInput = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+					return getProcessedTokenStream(
+							createStreamingLexer(scanInput),
+							lexer,
+							file,
+							skippedStages,
+							pipelined
+					);
+				}
+			}
+			CharSourceBuffer source = sourceBuffer.load(input, sizeHint);
+			lexToTape(new JcyoArrayLexer(source, options), source.length());
+			return getProcessedTokenStream(tokenTape.stream(), tokenTape.stream(), file, skippedStages, pipelined);
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to read input file: " + file, e);
+		}
+	}
+
+	private TokenStream createStreamingLexer(Reader input) {
+		return new JcyoLexer(input, options);
+	}
+
+	private void lexToTape(JcyoIndexedLexer lexer, int inputSize) {
+		if (lexesInParallel(inputSize)) {
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			int partSize = Math.max(MIN_PARALLEL_LEXING_PART_SIZE, inputSize / pool.getParallelism());
+			new ParallelTapeLexer(pool, partSize).lexInto(lexer, tokenTape);
+		} else {
+			lexer.lexInto(tokenTape);
+		}
+	}
+
+	private boolean lexesInParallel(int inputSize) {
+		return options.parallelLexingThreshold() > 0 && inputSize >= options.parallelLexingThreshold();
+	}
+
+	/**
+	 * Both lexer streams must produce the same tokens.
+	 * The first one is only scanned for the used imports, the second one is transformed lazily for the output.
+	 * The scan lexer may only be omitted if the unused import disabling is skipped.
+	 *
+	 * @param pipelined whether the transformation of the output runs on a thread of its own
+	 */
+	private TokenStream getProcessedTokenStream(
+			@Nullable TokenStream scanLexer,
+			TokenStream lexer,
+			File source,
+			Set<JcyoPipelineStage> skippedStages,
+			boolean pipelined
+	) throws JcyoProcessingException {
+		try {
+			TokenStream processed;
+			if (skippedStages.contains(JcyoPipelineStage.UNUSED_IMPORT_DISABLING)) {
+				processed = applyDirectives(lexer, skippedStages);
+			} else {
+				assert scanLexer != null;
+				Set<String> usedImports = unusedImportDisabler.collectUsedImports(
+						applyDirectives(scanLexer, skippedStages)
 				);
+				processed = unusedImportDisabler.apply(applyDirectives(lexer, skippedStages), usedImports);
 			}
+			return pipelined ? pump(processed) : processed;
+		} catch (JcyoParseException e) {
+			throw new JcyoProcessingException("Failed to parse input file: " + source, e);
+		} catch (Exception e) {
+			throw new JcyoProcessingException("Unexpected exception for input file: " + source, e);
+		}
+	}
+
+	private boolean pipelinesStages(long inputSize) {
+		return options.pipelinedStagesThreshold() > 0 && inputSize >= options.pipelinedStagesThreshold();
+	}
+
+	private TokenStream pump(TokenStream stream) {
+		if (pipelineExecutor == null) {
+			pipelineExecutor = Executors.newCachedThreadPool(
+					Thread.ofPlatform().name("jcyo-pipeline-", 0).daemon().factory()
+			);
+		}
+		TokenPump pump = new TokenPump(stream, PIPELINE_RING_CAPACITY, pipelineExecutor);
+		pumps.add(pump);
+		return pump;
+	}
+
+	/**
+	 * Stops the pumps of the current file, so that its input can be released.
+	 * Pumps that have been read to the end are already done.
+	 */
+	private void closePumps() {
+		// Close downstream pumps first, so that upstream pumps aren't blocked by them
+		for (int i = pumps.size() - 1; i >= 0; i--) {
+			pumps.get(i).close();
+		}
+		pumps.clear();
+	}
+
+	private TokenStream applyDirectives(TokenStream lexer, Set<JcyoPipelineStage> skippedStages) {
+		if (options.fusedTransformation()
+				&& !skippedStages.contains(JcyoPipelineStage.GENERATED_AND_DISABLED_REMOVAL)) {
+			return directiveApplier.applyFused(lexer, options);
+		}
+		TokenStream stream = lexer;
+		if (!skippedStages.contains(JcyoPipelineStage.UNPADDING)) {
+			stream = new JcyoUnpadder(stream);
+		}
+		if (!skippedStages.contains(JcyoPipelineStage.GENERATED_AND_DISABLED_REMOVAL)) {
+			stream = new GeneratedAndDisabledTokenRemover(stream, options);
+		}
+		if (!skippedStages.contains(JcyoPipelineStage.DIRECTIVE_APPLICATION)) {
+			stream = directiveApplier.apply(stream);
+		}
+		return stream;
+	}
+
+	void updateFileOnChanged(File file, TokenStream tokenStream) throws JcyoProcessingException {
+		updateFileOnChanged(file, outputStream -> writeTokens(outputStream, tokenStream));
+	}
+
+	/**
+	 * Renders the new content of the file and writes it if it differs from the current content.
+	 * Files that are already up-to-date are never written to.
+	 * Mapped files are only written once their mapping is released,
+	 * since some platforms don't allow replacing or truncating mapped files.
+	 */
+	private void updateFileOnChanged(File file, OutputRenderer renderer) throws JcyoProcessingException {
+		if (fingerprintStore != null && fingerprintStore.usesChecksums()) {
+			var checksum = new CRC32C();
+			updateChecksum = checksum;
+			OutputRenderer uncheckedRenderer = renderer;
+			renderer = outputStream -> uncheckedRenderer.render(new CheckedOutputStream(outputStream, checksum));
+		}
+		PendingUpdate update;
+		try {
+			update = switch (options.updateStrategy()) {
+				case IN_PLACE -> renderTailRewrite(file, renderer);
+				case ATOMIC -> renderReplacement(file, renderer);
+			};
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to update file: " + file, e);
+		}
+		if (update == null) {
+			return;
+		}
+		if (options.lexerMode() == JcyoLexerMode.MAPPED_UTF8) {
+			pendingUpdate = update;
 		} else {
-			tempFile.deleteOnExit();
+			commitUpdate(update);
 		}
 	}
 
-	private File createTempFileForOutput(File file) throws JcyoProcessingException {
+	/**
+	 * The differing tail is only written on commit, so the file can still be read as input while rendering.
+	 */
+	private @Nullable PendingUpdate renderTailRewrite(File file, OutputRenderer renderer) throws IOException {
+		var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
 		try {
-			return Files.createTempFile("jcyo-processor", file.getName()).toFile();
+			var outputStream = new TailRewritingOutputStream(channel);
+			renderer.render(outputStream);
+			if (outputStream.changed()) {
+				PendingUpdate update = new TailRewrite(file, channel, outputStream);
+				channel = null;
+				return update;
+			}
+			return null;
+		} finally {
+			closeQuietly(channel);
+		}
+	}
+
+	private @Nullable PendingUpdate renderReplacement(File file, OutputRenderer renderer) throws IOException {
+		renderer.render(outputBuffer.reset());
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (outputBuffer.contentEquals(channel)) {
+				return null;
+			}
+		}
+		return new Replacement(file, outputBuffer);
+	}
+
+	/**
+	 * Commits the update that has been deferred for a mapped file, if any.
+	 */
+	private void commitPendingUpdate() throws JcyoProcessingException {
+		PendingUpdate update = pendingUpdate;
+		if (update != null) {
+			pendingUpdate = null;
+			commitUpdate(update);
+		}
+	}
+
+	private void commitUpdate(PendingUpdate update) throws JcyoProcessingException {
+		try (update) {
+			update.commit();
 		} catch (IOException e) {
-			throw new JcyoProcessingException("Failed to create temporary file", e);
+			throw new JcyoProcessingException("Failed to update file: " + update.file(), e);
+		}
+		Checksum checksum = updateChecksum;
+		writtenFingerprint = captureWrittenFingerprint(
+				update.file().toPath(),
+				() -> checksum != null ? checksum.getValue() : 0
+		);
+	}
+
+	private void discardPendingUpdate() {
+		PendingUpdate update = pendingUpdate;
+		if (update != null) {
+			pendingUpdate = null;
+			closeQuietly(update);
 		}
 	}
 
+	private static void closeQuietly(@Nullable Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Writes the content to a temporary file next to the target and moves it over the target.
+	 */
+	private static void replaceFile(File file, ByteOutputBuffer content) throws IOException {
+		Path tempFile = createTempFileFor(file.toPath());
+		try {
+			try (var channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				content.writeTo(channel);
+			}
+			moveOver(tempFile, file.toPath());
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	static Path createTempFileFor(Path target) throws IOException {
+		return Files.createTempFile(
+				target.toAbsolutePath().getParent(),
+				"." + target.getFileName(),
+				".jcyo"
+		);
+	}
+
+	/**
+	 * Moves the file over the target, atomically where the file system supports it.
+	 */
+	static void moveOver(Path file, Path target) throws IOException {
+		try {
+			Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Outputs are encoded into reusable buffers, so that most files are written in one go.
+	 * Outputs that are written at the same time must use different buffers.
+	 */
+	private DirectUtf8Writer createOutputWriter(OutputStream outputStream, int outputBuffer) {
+		byte[] buffer = outputBuffers[outputBuffer];
+		if (buffer == null) {
+			buffer = outputBuffers[outputBuffer] = new byte[OUTPUT_BUFFER_SIZE];
+		}
+		return new DirectUtf8Writer(outputStream, buffer);
+	}
+
+	private TokenWriter createTokenWriter(OutputStream outputStream, int outputBuffer) {
+		DirectUtf8Writer writer = createOutputWriter(outputStream, outputBuffer);
+		if (copiedSource != null && copiedSpans != null) {
+			return new SourceCopyingTokenWriter(writer, copiedSource, copiedSpans, options);
+		}
+		return new TokenWriter(writer, options);
+	}
+
 	void writeToFile(File file, TokenStream tokenStream) throws JcyoProcessingException {
+		writeToFile(file, outputStream -> writeTokens(outputStream, tokenStream));
+	}
+
+	private void writeToFile(File file, OutputRenderer renderer) throws JcyoProcessingException {
 		file.getParentFile().mkdirs();
-		try (var writer = new TokenWriter(new BufferedWriter(new FileWriter(file)), options)) {
-			writer.writeAll(tokenStream);
+		try (var outputStream = new FileOutputStream(file)) {
+			renderer.render(outputStream);
 		} catch (IOException e) {
 			throw new JcyoProcessingException("Failed to write to file: " + file, e);
 		}
 	}
+
+	private void writeTokens(OutputStream outputStream, TokenStream tokenStream) throws IOException {
+		writeTokens(outputStream, UPDATE_OUTPUT_BUFFER, tokenStream);
+	}
+
+	private void writeTokens(OutputStream outputStream, int outputBuffer, TokenStream tokenStream) throws IOException {
+		try (var writer = createTokenWriter(outputStream, outputBuffer)) {
+			writer.writeAll(tokenStream);
+		}
+	}
+
+	/**
+	 * Writes the tokens to the given output and their cleaned form to the clean output file in a single pass,
+	 * so that no more than the lookahead of the cleaner is held in memory.
+	 */
+	private void writeTee(OutputStream outputStream, File cleanOutput, TokenStream tokenStream) throws IOException {
+		cleanOutput.getParentFile().mkdirs();
+		try (var cleanOutputStream = new FileOutputStream(cleanOutput)) {
+			writeTee(outputStream, cleanOutputStream, tokenStream);
+		}
+	}
+
+	private void writeTee(
+			OutputStream outputStream,
+			OutputStream cleanOutputStream,
+			TokenStream tokenStream
+	) throws IOException {
+		try (var writer = createTokenWriter(outputStream, UPDATE_OUTPUT_BUFFER)) {
+			writeTokens(cleanOutputStream, CLEAN_OUTPUT_BUFFER, new JcyoCleaner(new TokenTee(tokenStream, writer)));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private EditList recordEdits(
+			MemorySegment source,
+			SourceSpans spans,
+			TokenStream tokenStream
+	) throws JcyoProcessingException {
+		var writer = new EditListTokenWriter(new EditRecorder(source), spans, options);
+		try (writer) {
+			writer.writeAll(tokenStream);
+		} catch (IOException e) {
+			throw new JcyoProcessingException("Failed to record edits", e);
+		}
+		return writer.edits();
+	}
+
+	/**
+	 * Plain file outputs receive the unchanged spans straight from the source channel.
+	 */
+	private void renderEdits(EditList edits, FileChannel source, OutputStream outputStream) throws IOException {
+		if (outputStream instanceof FileOutputStream fileOutputStream) {
+			edits.render(source, source.size(), fileOutputStream.getChannel());
+			return;
+		}
+		var bufferedStream = new BufferedOutputStream(outputStream);
+		edits.render(source, source.size(), Channels.newChannel(bufferedStream));
+		bufferedStream.flush();
+	}
+
+	@FunctionalInterface
+	private interface OutputRenderer {
+		void render(OutputStream outputStream) throws IOException;
+	}
+
+	/**
+	 * An update of an input file that has been rendered, but not written yet.
+	 * Closing it without committing leaves the file as is.
+	 */
+	private sealed interface PendingUpdate extends Closeable {
+		File file();
+
+		void commit() throws IOException;
+	}
+
+	private record TailRewrite(
+			File file,
+			FileChannel channel,
+			TailRewritingOutputStream outputStream
+	) implements PendingUpdate {
+		@Override
+		public void commit() throws IOException {
+			outputStream.commit();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private record Replacement(File file, ByteOutputBuffer content) implements PendingUpdate {
+		@Override
+		public void commit() throws IOException {
+			replaceFile(file, content);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
 }
@@ -0,0 +1,154 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A lexer that works directly on UTF-8 encoded bytes, e.g. a memory-mapped file.
+ * ASCII bytes are classified without decoding, only non-ASCII sequences are decoded to codepoints.
+ * <p>
+ * Unlike the char based lexers, supplementary characters are treated as a single codepoint.
+ * Malformed sequences are replaced with replacement characters just like the JDK's decoder does,
+ * so that all lexer modes read the same text.
+ */
+public class JcyoUtf8Lexer extends JcyoIndexedLexer {
+	private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+	private final MemorySegment segment;
+	private final BoundaryScanner scanner;
+	private byte[] sliceBuffer = new byte[256];
+
+	public JcyoUtf8Lexer(MemorySegment segment, JcyoOptions options) {
+		this(segment, options, BoundaryScanner.preferred());
+	}
+
+	JcyoUtf8Lexer(MemorySegment segment, JcyoOptions options, BoundaryScanner scanner) {
+		this(segment, 0, options, scanner);
+	}
+
+	private JcyoUtf8Lexer(MemorySegment segment, int start, JcyoOptions options, BoundaryScanner scanner) {
+		super(start, Math.toIntExact(segment.byteSize()), options);
+		this.segment = segment;
+		this.scanner = scanner;
+	}
+
+	@Override
+	protected JcyoIndexedLexer forkAt(int start) {
+		return new JcyoUtf8Lexer(segment, start, options, scanner);
+	}
+
+	@Override
+	protected int unitAt(int index) {
+		return segment.get(ValueLayout.JAVA_BYTE, index) & 0xFF;
+	}
+
+	@Override
+	protected int codepointAt(int index) {
+		int lead = unitAt(index);
+		if (lead < 0x80) {
+			return lead;
+		}
+		int length = sequenceLength(index, lead);
+		return switch (length) {
+			case 2 -> (lead & 0x1F) << 6 | continuationAt(index + 1);
+			case 3 -> (lead & 0x0F) << 12 | continuationAt(index + 1) << 6 | continuationAt(index + 2);
+			case 4 -> (lead & 0x07) << 18
+					| continuationAt(index + 1) << 12
+					| continuationAt(index + 2) << 6
+					| continuationAt(index + 3);
+			default -> REPLACEMENT_CHARACTER;
+		};
+	}
+
+	@Override
+	protected int codepointLength(int index) {
+		int lead = unitAt(index);
+		if (lead < 0x80) {
+			return 1;
+		}
+		return Math.abs(sequenceLength(index, lead));
+	}
+
+	/**
+	 * Determines the bytes that make up the codepoint at the given index.
+	 * Malformed sequences are split up like the JDK's UTF-8 decoder does,
+	 * which mostly replaces each maximal subpart of a well-formed sequence with a single replacement character.
+	 * An incomplete sequence at the end of the input is replaced as a whole.
+	 *
+	 * @return the length of the well-formed sequence,
+	 * or the negated number of bytes that are replaced with a single replacement character
+	 */
+	private int sequenceLength(int index, int lead) {
+		int remaining = end - index;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			return remaining >= 2 && isContinuation(index + 1) ? 2 : -1;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			if (remaining >= 2 && !isValidSecond(lead, unitAt(index + 1))) {
+				return -1;
+			}
+			if (remaining < 3) {
+				return -remaining;
+			}
+			if (!isContinuation(index + 2)) {
+				return -2;
+			}
+			if (lead == 0xED && unitAt(index + 1) >= 0xA0) {
+				// Surrogates are replaced as a whole
+				return -3;
+			}
+			return 3;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			if (remaining >= 2 && !isValidSecond(lead, unitAt(index + 1))) {
+				return -1;
+			}
+			if (remaining >= 3 && !isContinuation(index + 2)) {
+				return -2;
+			}
+			if (remaining < 4) {
+				return -remaining;
+			}
+			return isContinuation(index + 3) ? 4 : -3;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether the second byte may follow the lead byte,
+	 * ruling out overlong encodings and codepoints beyond the Unicode range
+	 */
+	private static boolean isValidSecond(int lead, int second) {
+		return switch (lead) {
+			case 0xE0 -> second >= 0xA0 && second <= 0xBF;
+			case 0xF0 -> second >= 0x90 && second <= 0xBF;
+			case 0xF4 -> second >= 0x80 && second <= 0x8F;
+			default -> (second & 0xC0) == 0x80;
+		};
+	}
+
+	private boolean isContinuation(int index) {
+		return (unitAt(index) & 0xC0) == 0x80;
+	}
+
+	private int continuationAt(int index) {
+		return unitAt(index) & 0x3F;
+	}
+
+	@Override
+	protected int indexOfAny(int from, char first, char second) {
+		// Continuation bytes never look like ASCII, so searching by byte is safe
+		return (int) scanner.indexOfAny(segment, from, end, (byte) first, (byte) second);
+	}
+
+	@Override
+	protected String slice(int start, int end) {
+		int length = end - start;
+		if (sliceBuffer.length < length) {
+			sliceBuffer = new byte[Math.max(length, sliceBuffer.length * 2)];
+		}
+		MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, start, sliceBuffer, 0, length);
+		return new String(sliceBuffer, 0, length, StandardCharsets.UTF_8);
+	}
+}
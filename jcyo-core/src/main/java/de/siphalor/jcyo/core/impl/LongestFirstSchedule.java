@@ -0,0 +1,138 @@
+package de.siphalor.jcyo.core.impl;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hands out files by descending cost, so that no expensive file is picked up last and prolongs a parallel run.
+ * <p>
+ * The cost of a file is the time it took to process it in a previous run, if it has been recorded.
+ * Other files are estimated by their size, scaled by the average time per byte of the recorded files.
+ * Huge files form a lane of their own, so that they can be picked up right away by a dedicated worker.
+ */
+public class LongestFirstSchedule {
+	private final Path[] hugeFiles;
+	private final Path[] regularFiles;
+	private final AtomicInteger nextHugeFile = new AtomicInteger();
+	private final AtomicInteger nextRegularFile = new AtomicInteger();
+
+	private LongestFirstSchedule(List<Path> hugeFiles, List<Path> regularFiles) {
+		this.hugeFiles = hugeFiles.toArray(Path[]::new);
+		this.regularFiles = regularFiles.toArray(Path[]::new);
+	}
+
+	/**
+	 * @param recordedCost the recorded cost of a file, or a negative value if there is none
+	 * @param hugeFileThreshold the size in bytes from which files are huge, or {@code 0} if no file is
+	 */
+	public static LongestFirstSchedule create(
+			List<Path> files,
+			ToLongFunction<Path> recordedCost,
+			long hugeFileThreshold
+	) {
+		List<ScheduledFile> scheduledFiles = new ArrayList<>(files.size());
+		long recordedCostSum = 0;
+		long recordedSizeSum = 0;
+		for (Path file : files) {
+			long size;
+			try {
+				size = Files.size(file);
+			} catch (IOException e) {
+				// The failure is reported once the file is processed
+				size = 0;
+			}
+			long cost = recordedCost.applyAsLong(file);
+			if (cost >= 0) {
+				recordedCostSum += cost;
+				recordedSizeSum += size;
+			}
+			scheduledFiles.add(new ScheduledFile(file, size, cost));
+		}
+
+		double costPerByte = recordedSizeSum > 0 ? (double) recordedCostSum / recordedSizeSum : 1;
+		scheduledFiles.sort(Comparator.comparingDouble(
+				(ScheduledFile file) -> file.cost() >= 0 ? file.cost() : file.size() * costPerByte
+		).reversed());
+
+		List<Path> hugeFiles = new ArrayList<>();
+		List<Path> regularFiles = new ArrayList<>(scheduledFiles.size());
+		for (ScheduledFile file : scheduledFiles) {
+			if (hugeFileThreshold > 0 && file.size() >= hugeFileThreshold) {
+				hugeFiles.add(file.path());
+			} else {
+				regularFiles.add(file.path());
+			}
+		}
+		return new LongestFirstSchedule(hugeFiles, regularFiles);
+	}
+
+	public boolean hasHugeFiles() {
+		return hugeFiles.length > 0;
+	}
+
+	/**
+	 * Takes the most expensive huge file that hasn't been taken yet.
+	 *
+	 * @return the file or {@code null} if all huge files have been taken
+	 */
+	public @Nullable Path pollHuge() {
+		return poll(hugeFiles, nextHugeFile);
+	}
+
+	/**
+	 * Takes the most expensive regular file that hasn't been taken yet,
+	 * and once there are none, helps out with the huge files.
+	 *
+	 * @return the file or {@code null} if all files have been taken
+	 */
+	public @Nullable Path poll() {
+		Path file = poll(regularFiles, nextRegularFile);
+		return file != null ? file : pollHuge();
+	}
+
+	/**
+	 * Processes all files with the given number of workers on the pool, each taking the most expensive file that is left.
+	 * If there are huge files, one of the workers takes them first and joins the others once there are none left.
+	 */
+	public void process(ForkJoinPool pool, int workers, Consumer<Path> files) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+		if (hasHugeFiles()) {
+			tasks.add(pool.submit(() -> {
+				processAllOf(this::pollHuge, files);
+				processAllOf(this::poll, files);
+			}));
+		}
+		while (tasks.size() < workers) {
+			tasks.add(pool.submit(() -> processAllOf(this::poll, files)));
+		}
+		tasks.forEach(ForkJoinTask::join);
+	}
+
+	private static void processAllOf(Supplier<@Nullable Path> source, Consumer<Path> files) {
+		for (Path file = source.get(); file != null; file = source.get()) {
+			files.accept(file);
+		}
+	}
+
+	private static @Nullable Path poll(Path[] files, AtomicInteger next) {
+		if (next.get() >= files.length) {
+			return null;
+		}
+		int index = next.getAndIncrement();
+		return index < files.length ? files[index] : null;
+	}
+
+	private record ScheduledFile(Path path, long size, long cost) {}
+}
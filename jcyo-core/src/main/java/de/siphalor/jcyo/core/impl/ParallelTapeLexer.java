@@ -0,0 +1,100 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lexes large inputs of an {@link JcyoIndexedLexer} in parallel.
+ * <p>
+ * The input is split into parts at line starts.
+ * All parts but the first are lexed {@link JcyoIndexedLexer#speculativeAt speculatively},
+ * assuming that they don't start inside a comment, a literal or a directive.
+ * When the parts are stitched together, the lexer of the previous part must have stopped in exactly that state.
+ * Otherwise, the speculative tokens are dropped and the previous lexer just continues through the part.
+ */
+public class ParallelTapeLexer {
+	private final ForkJoinPool pool;
+	private final int partSize;
+
+	public ParallelTapeLexer(ForkJoinPool pool, int partSize) {
+		this.pool = pool;
+		this.partSize = partSize;
+	}
+
+	/**
+	 * Lexes all remaining input into the given tape, replacing its previous content.
+	 * The result is the same as with {@link JcyoIndexedLexer#lexInto}.
+	 * @return the number of seams at which the speculation failed
+	 */
+	public int lexInto(JcyoIndexedLexer lexer, TokenTape tape) {
+		int[] seams = findSeams(lexer);
+		tape.reset(lexer);
+		if (seams.length == 0) {
+			lexer.lexUntil(tape, lexer.end);
+			return 0;
+		}
+
+		JcyoIndexedLexer[] partLexers = new JcyoIndexedLexer[seams.length];
+		@SuppressWarnings("unchecked")
+		ForkJoinTask<TokenTape>[] parts = new ForkJoinTask[seams.length];
+		for (int i = 0; i < seams.length; i++) {
+			JcyoIndexedLexer partLexer = lexer.speculativeAt(seams[i]);
+			int stop = partStop(seams, i, lexer.end);
+			partLexers[i] = partLexer;
+			parts[i] = pool.submit(() -> {
+				TokenTape part = new TokenTape();
+				part.reset(partLexer);
+				partLexer.lexUntil(part, stop);
+				return part;
+			});
+		}
+
+		lexer.lexUntil(tape, seams[0]);
+		JcyoIndexedLexer current = lexer;
+		int failedSeams = 0;
+		for (int i = 0; i < seams.length; i++) {
+			if (current.isCleanSeam(seams[i])) {
+				tape.append(parts[i].join());
+				current = partLexers[i];
+			} else {
+				parts[i].cancel(false);
+				current.lexUntil(tape, partStop(seams, i, lexer.end));
+				failedSeams++;
+			}
+		}
+		return failedSeams;
+	}
+
+	private static int partStop(int[] seams, int index, int end) {
+		return index + 1 < seams.length ? seams[index + 1] : end;
+	}
+
+	/**
+	 * Finds line starts roughly every {@link #partSize} units.
+	 * Only line feeds that aren't followed by a carriage return are used,
+	 * since the lexer reads {@code \n\r} as a single line break.
+	 */
+	private int[] findSeams(JcyoIndexedLexer lexer) {
+		int[] seams = new int[8];
+		int count = 0;
+		int candidate = lexer.pos + partSize;
+		while (candidate < lexer.end) {
+			int lineFeed = lexer.indexOfAny(candidate, '\n', '\n');
+			while (lineFeed + 1 < lexer.end && lexer.unitAt(lineFeed + 1) == '\r') {
+				lineFeed = lexer.indexOfAny(lineFeed + 1, '\n', '\n');
+			}
+			if (lineFeed + 1 >= lexer.end) {
+				break;
+			}
+			if (count == seams.length) {
+				seams = Arrays.copyOf(seams, count * 2);
+			}
+			seams[count++] = lineFeed + 1;
+			candidate = lineFeed + 1 + partSize;
+		}
+		return Arrays.copyOf(seams, count);
+	}
+}
@@ -0,0 +1,45 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.SourceSpans;
+import de.siphalor.jcyo.core.impl.token.RepresentableToken;
+import de.siphalor.jcyo.core.impl.token.VerbatimChunkToken;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Writes tokens to a UTF-8 output, copying the bytes of tokens that are passed through from a UTF-8 source,
+ * so that they aren't encoded again and the source bytes are preserved exactly.
+ */
+public class SourceCopyingTokenWriter extends TokenWriter {
+	private final DirectUtf8Writer writer;
+	private final MemorySegment source;
+	private final SourceSpans spans;
+
+	public SourceCopyingTokenWriter(
+			DirectUtf8Writer writer,
+			MemorySegment source,
+			SourceSpans spans,
+			JcyoOptions options
+	) {
+		super(writer, options);
+		this.writer = writer;
+		this.source = source;
+		this.spans = spans;
+	}
+
+	@Override
+	protected void writeRaw(RepresentableToken token) throws IOException {
+		if (token instanceof VerbatimChunkToken chunkToken && chunkToken.hasSourceSpan()) {
+			writer.writeEncoded(source, chunkToken.start(), chunkToken.end());
+			return;
+		}
+		int index = spans.indexOf(token);
+		if (index >= 0) {
+			writer.writeEncoded(source, spans.start(index), spans.end(index));
+		} else {
+			super.writeRaw(token);
+		}
+	}
+}
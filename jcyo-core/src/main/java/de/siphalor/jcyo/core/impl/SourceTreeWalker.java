@@ -0,0 +1,148 @@
+package de.siphalor.jcyo.core.impl;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Finds the files in a directory tree that match include globs, but none of the exclude globs.
+ * <p>
+ * Globs that contain a {@code /} are matched against the path relative to the base directory,
+ * all others against the file name only. Excluded directories are pruned as a whole.
+ * Files are handed on as soon as they are found, so that they can be processed while the walk goes on.
+ */
+public class SourceTreeWalker {
+	private final Path baseDirectory;
+	private final @Nullable Predicate<Path> includes;
+	private final @Nullable Predicate<Path> excludes;
+
+	/**
+	 * @param includes the globs of the included files, or an empty list to include all files
+	 * @param excludes the globs of the excluded files and directories
+	 */
+	public SourceTreeWalker(Path baseDirectory, List<String> includes, List<String> excludes) {
+		this.baseDirectory = baseDirectory;
+		this.includes = compile(baseDirectory.getFileSystem(), includes);
+		this.excludes = compile(baseDirectory.getFileSystem(), excludes);
+	}
+
+	private static @Nullable Predicate<Path> compile(FileSystem fileSystem, List<String> globs) {
+		Predicate<Path> predicate = null;
+		for (String glob : globs) {
+			PathMatcher matcher = fileSystem.getPathMatcher("glob:" + glob);
+			Predicate<Path> globPredicate;
+			if (glob.indexOf('/') >= 0) {
+				globPredicate = matcher::matches;
+			} else {
+				globPredicate = relativePath -> matcher.matches(relativePath.getFileName());
+			}
+			predicate = predicate == null ? globPredicate : predicate.or(globPredicate);
+		}
+		return predicate;
+	}
+
+	/**
+	 * Walks the tree on the calling thread.
+	 */
+	public void walk(Consumer<Path> files) throws IOException {
+		Files.walkFileTree(baseDirectory, new Visitor(baseDirectory, files, null));
+	}
+
+	/**
+	 * Walks the tree on the given pool, with each subdirectory being enumerated by a task of its own.
+	 * The files are handed on from the threads of the pool.
+	 */
+	public void walk(ForkJoinPool pool, Consumer<Path> files) throws IOException {
+		try {
+			pool.invoke(new DirectoryWalk(baseDirectory, files));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private boolean isExcluded(Path path) {
+		return excludes != null && excludes.test(baseDirectory.relativize(path));
+	}
+
+	private boolean isIncluded(Path file) {
+		Path relativePath = baseDirectory.relativize(file);
+		return (includes == null || includes.test(relativePath)) && (excludes == null || !excludes.test(relativePath));
+	}
+
+	private class Visitor extends SimpleFileVisitor<Path> {
+		private final Path start;
+		private final Consumer<Path> files;
+		/**
+		 * The walks that have been forked for the subdirectories, or {@code null} if they are walked right away.
+		 */
+		private final @Nullable List<DirectoryWalk> forks;
+
+		private Visitor(Path start, Consumer<Path> files, @Nullable List<DirectoryWalk> forks) {
+			this.start = start;
+			this.files = files;
+			this.forks = forks;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+			if (directory.equals(start)) {
+				return FileVisitResult.CONTINUE;
+			}
+			if (isExcluded(directory)) {
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+			if (forks != null) {
+				var walk = new DirectoryWalk(directory, files);
+				walk.fork();
+				forks.add(walk);
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+			if (!attributes.isDirectory() && isIncluded(file)) {
+				files.accept(file);
+			}
+			return FileVisitResult.CONTINUE;
+		}
+	}
+
+	private class DirectoryWalk extends RecursiveAction {
+		private final Path directory;
+		private final Consumer<Path> files;
+
+		private DirectoryWalk(Path directory, Consumer<Path> files) {
+			this.directory = directory;
+			this.files = files;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryWalk> forks = new ArrayList<>();
+			try {
+				Files.walkFileTree(directory, new Visitor(directory, files, forks));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			for (DirectoryWalk fork : forks) {
+				fork.join();
+			}
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.api.JcyoProcessingException;
+import de.siphalor.jcyo.core.api.JcyoUpdateStrategy;
+import de.siphalor.jcyo.core.impl.FingerprintStore.Fingerprint;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes files in three stages that run on pools of their own:
+ * reading whole files into pooled buffers, transforming them with processors of their own
+ * and writing the outputs through asynchronous file channels.
+ * <p>
+ * A {@link ByteBudget} bounds the bytes of inputs and outputs that are in flight,
+ * so that reading stalls once the later stages fall behind.
+ */
+public class StagedExecutor implements AutoCloseable {
+	/**
+	 * Buffers that have grown beyond this capacity are dropped instead of being pooled,
+	 * so that single huge files don't keep their memory around.
+	 */
+	private static final int MAX_POOLED_BUFFER_CAPACITY = 4 * 1024 * 1024;
+	private static final Set<OpenOption> CREATE_OPTIONS = Set.of(
+			StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING
+	);
+	private static final Set<OpenOption> UPDATE_OPTIONS = Set.of(StandardOpenOption.WRITE);
+
+	private final JcyoProcessor prototype;
+	private final JcyoOptions options;
+	private final FailureHandler failureHandler;
+	private final ByteBudget budget;
+	private final ExecutorService readExecutor;
+	private final ExecutorService transformExecutor;
+	private final ExecutorService writeExecutor;
+	private final Queue<JcyoProcessor> idleProcessors = new ConcurrentLinkedQueue<>();
+	private final Queue<ByteOutputBuffer> idleBuffers = new ConcurrentLinkedQueue<>();
+	private final AtomicLong pendingFiles = new AtomicLong();
+	private final Object completionLock = new Object();
+
+	/**
+	 * @param prototype the processor that the processors of the transformation stage are forked from
+	 */
+	public StagedExecutor(JcyoProcessor prototype, JcyoOptions options, FailureHandler failureHandler) {
+		this.prototype = prototype;
+		this.options = options;
+		this.failureHandler = failureHandler;
+		this.budget = new ByteBudget(options.maxInFlightBytes());
+		this.readExecutor = createExecutor("jcyo-read-", options.readParallelism());
+		this.transformExecutor = createExecutor("jcyo-transform-", options.parallelism());
+		this.writeExecutor = createExecutor("jcyo-write-", options.writeParallelism());
+	}
+
+	private static ExecutorService createExecutor(String name, int threads) {
+		return Executors.newFixedThreadPool(
+				Math.max(1, threads),
+				Thread.ofPlatform().name(name, 0).daemon().factory()
+		);
+	}
+
+	/**
+	 * Submits a file to be processed.
+	 * Files may be submitted from any thread until {@link #awaitCompletion()} is called.
+	 */
+	public void submit(Path inputFile) {
+		pendingFiles.incrementAndGet();
+		FileJob job = new FileJob(inputFile);
+		try {
+			readExecutor.execute(() -> read(job));
+		} catch (RuntimeException e) {
+			finish(job, new JcyoProcessingException("Failed to submit input file: " + inputFile, e));
+		}
+	}
+
+	/**
+	 * Waits until all submitted files have been processed or have failed.
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		synchronized (completionLock) {
+			while (pendingFiles.get() > 0) {
+				completionLock.wait();
+			}
+		}
+	}
+
+	private void read(FileJob job) {
+		try {
+			Path absoluteInput = prototype.resolveInput(job.inputFile);
+			job.absoluteInput = absoluteInput;
+			job.cleanOutput = prototype.getCleanOutputFileForInputPath(absoluteInput);
+			job.fingerprint = prototype.captureFingerprint(absoluteInput);
+			if (prototype.skipsUnchanged(absoluteInput, job.cleanOutput, job.fingerprint)) {
+				finish(job, null);
+				return;
+			}
+			try (var channel = FileChannel.open(absoluteInput, StandardOpenOption.READ)) {
+				job.reservedBytes = budget.acquire(channel.size());
+				job.input = takeBuffer().readFrom(channel);
+			}
+		} catch (IOException e) {
+			finish(job, new JcyoProcessingException("Failed to read input file: " + job.inputFile, e));
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			finish(job, new JcyoProcessingException("Interrupted while reading input file: " + job.inputFile, e));
+			return;
+		} catch (JcyoProcessingException e) {
+			finish(job, e);
+			return;
+		} catch (RuntimeException e) {
+			finish(job, new JcyoProcessingException("Unexpected exception for input file: " + job.inputFile, e));
+			return;
+		}
+		transformExecutor.execute(() -> transform(job));
+	}
+
+	private void transform(FileJob job) {
+		JcyoProcessor processor = idleProcessors.poll();
+		if (processor == null) {
+			processor = prototype.fork();
+		}
+		List<Write> writes;
+		long start = System.nanoTime();
+		try {
+			writes = render(processor, job);
+			job.costNanos = System.nanoTime() - start;
+		} catch (JcyoProcessingException e) {
+			finish(job, e);
+			return;
+		} catch (IOException e) {
+			finish(job, new JcyoProcessingException("Failed to prepare outputs of input file: " + job.inputFile, e));
+			return;
+		} catch (RuntimeException e) {
+			finish(job, new JcyoProcessingException("Unexpected exception for input file: " + job.inputFile, e));
+			return;
+		} finally {
+			idleProcessors.add(processor);
+		}
+
+		job.processed = true;
+		if (writes.isEmpty()) {
+			finish(job, null);
+			return;
+		}
+		job.pendingWrites.set(writes.size());
+		for (Write write : writes) {
+			write.start();
+		}
+	}
+
+	private List<Write> render(JcyoProcessor processor, FileJob job) throws JcyoProcessingException, IOException {
+		ByteOutputBuffer input = job.input;
+		assert input != null && job.absoluteInput != null;
+		File cleanOutput = job.cleanOutput;
+		if (options.updateInput()) {
+			job.updateOutput = takeBuffer();
+		}
+		if (cleanOutput != null) {
+			job.cleanOutputBuffer = takeBuffer();
+		}
+		ByteOutputBuffer renderedUpdate = job.updateOutput;
+		ByteOutputBuffer renderedClean = job.cleanOutputBuffer;
+
+		List<Write> writes = new ArrayList<>(2);
+		if (!processor.render(job.absoluteInput.toFile(), input.segment(), renderedUpdate, renderedClean)) {
+			if (cleanOutput != null) {
+				writes.add(createCleanOutputWrite(job, cleanOutput, input));
+			}
+			return writes;
+		}
+
+		long renderedBytes = (renderedUpdate != null ? renderedUpdate.length() : 0)
+				+ (renderedClean != null ? renderedClean.length() : 0);
+		budget.add(renderedBytes);
+		job.reservedBytes += renderedBytes;
+
+		if (renderedUpdate != null) {
+			int mismatch = renderedUpdate.mismatch(input);
+			if (mismatch >= 0) {
+				writes.add(createUpdateWrite(job, renderedUpdate, mismatch));
+			}
+		}
+		if (cleanOutput != null) {
+			assert renderedClean != null;
+			writes.add(createCleanOutputWrite(job, cleanOutput, renderedClean));
+		}
+		return writes;
+	}
+
+	private Write createCleanOutputWrite(FileJob job, File cleanOutput, ByteOutputBuffer content) {
+		cleanOutput.getParentFile().mkdirs();
+		return new Write(job, cleanOutput.toPath(), CREATE_OPTIONS, content.byteBuffer(0), 0, false, null);
+	}
+
+	/**
+	 * In place updates only write the tail from the first differing byte onward.
+	 */
+	private Write createUpdateWrite(FileJob job, ByteOutputBuffer content, int mismatch) throws IOException {
+		Path input = job.absoluteInput;
+		assert input != null;
+		if (options.updateStrategy() == JcyoUpdateStrategy.ATOMIC) {
+			Path tempFile = JcyoProcessor.createTempFileFor(input);
+			return new Write(job, tempFile, UPDATE_OPTIONS, content.byteBuffer(0), 0, false, input);
+		}
+		return new Write(job, input, UPDATE_OPTIONS, content.byteBuffer(mismatch), mismatch, true, null);
+	}
+
+	private void writeDone(FileJob job, @Nullable JcyoProcessingException failure) {
+		if (failure != null) {
+			job.failure.compareAndSet(null, failure);
+		}
+		if (job.pendingWrites.decrementAndGet() == 0) {
+			finish(job, job.failure.get());
+		}
+	}
+
+	private void finish(FileJob job, @Nullable JcyoProcessingException failure) {
+		try {
+			if (failure == null && job.processed && job.absoluteInput != null) {
+				prototype.recordFingerprint(
+						job.absoluteInput,
+						job.writtenFingerprint != null ? job.writtenFingerprint : job.fingerprint,
+						job.costNanos
+				);
+			}
+		} finally {
+			releaseBuffer(job.input);
+			releaseBuffer(job.updateOutput);
+			releaseBuffer(job.cleanOutputBuffer);
+			budget.release(job.reservedBytes);
+		}
+
+		try {
+			if (failure != null) {
+				failureHandler.failed(job.inputFile, failure);
+			}
+		} finally {
+			if (pendingFiles.decrementAndGet() == 0) {
+				synchronized (completionLock) {
+					completionLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private ByteOutputBuffer takeBuffer() {
+		ByteOutputBuffer buffer = idleBuffers.poll();
+		return buffer != null ? buffer.reset() : new ByteOutputBuffer();
+	}
+
+	private void releaseBuffer(@Nullable ByteOutputBuffer buffer) {
+		if (buffer != null && buffer.capacity() <= MAX_POOLED_BUFFER_CAPACITY) {
+			idleBuffers.add(buffer);
+		}
+	}
+
+	/**
+	 * Stops all stages. Files that are still in flight may be left unprocessed.
+	 */
+	@Override
+	public void close() {
+		readExecutor.shutdownNow();
+		transformExecutor.shutdownNow();
+		writeExecutor.shutdownNow();
+	}
+
+	@FunctionalInterface
+	public interface FailureHandler {
+		void failed(Path inputFile, JcyoProcessingException exception);
+	}
+
+	/**
+	 * The state of a file while it passes through the stages.
+	 * Each stage hands the job on to the next one, so that its fields are only accessed by one thread at a time.
+	 */
+	private static class FileJob {
+		private final Path inputFile;
+		private @Nullable Path absoluteInput;
+		private @Nullable File cleanOutput;
+		private long reservedBytes;
+		private @Nullable ByteOutputBuffer input;
+		private @Nullable ByteOutputBuffer updateOutput;
+		private @Nullable ByteOutputBuffer cleanOutputBuffer;
+		private boolean processed;
+		private long costNanos;
+		/**
+		 * The fingerprint of the input from before it has been read.
+		 */
+		private @Nullable Fingerprint fingerprint;
+		/**
+		 * The fingerprint of the content that the input has been updated with, if it has been.
+		 */
+		private volatile @Nullable Fingerprint writtenFingerprint;
+		private final AtomicInteger pendingWrites = new AtomicInteger();
+		private final AtomicReference<@Nullable JcyoProcessingException> failure = new AtomicReference<>();
+
+		private FileJob(Path inputFile) {
+			this.inputFile = inputFile;
+		}
+	}
+
+	/**
+	 * Writes a buffer to a file through an asynchronous channel, whose completions run on the write stage.
+	 */
+	private class Write implements CompletionHandler<Integer, @Nullable Void> {
+		private final FileJob job;
+		private final Path file;
+		private final Set<OpenOption> openOptions;
+		private final ByteBuffer content;
+		private long position;
+		private final boolean truncate;
+		/**
+		 * The file that the written file is moved over once it is complete, if any.
+		 */
+		private final @Nullable Path replacedFile;
+		private @Nullable AsynchronousFileChannel channel;
+
+		private Write(
+				FileJob job,
+				Path file,
+				Set<OpenOption> openOptions,
+				ByteBuffer content,
+				long position,
+				boolean truncate,
+				@Nullable Path replacedFile
+		) {
+			this.job = job;
+			this.file = file;
+			this.openOptions = openOptions;
+			this.content = content;
+			this.position = position;
+			this.truncate = truncate;
+			this.replacedFile = replacedFile;
+		}
+
+		private void start() {
+			try {
+				channel = AsynchronousFileChannel.open(file, openOptions, writeExecutor);
+				channel.write(content, position, null, this);
+			} catch (IOException | RuntimeException e) {
+				failed(e, null);
+			}
+		}
+
+		@Override
+		public void completed(Integer written, @Nullable Void attachment) {
+			AsynchronousFileChannel channel = this.channel;
+			assert channel != null;
+			position += written;
+			if (content.hasRemaining()) {
+				channel.write(content, position, null, this);
+				return;
+			}
+			try {
+				if (truncate) {
+					channel.truncate(position);
+				}
+				channel.close();
+				if (replacedFile != null) {
+					JcyoProcessor.moveOver(file, replacedFile);
+				}
+			} catch (IOException e) {
+				failed(e, null);
+				return;
+			}
+			Path target = replacedFile != null ? replacedFile : file;
+			if (target.equals(job.absoluteInput) && job.updateOutput != null) {
+				job.writtenFingerprint = prototype.captureWrittenFingerprint(target, job.updateOutput);
+			}
+			writeDone(job, null);
+		}
+
+		@Override
+		public void failed(Throwable exception, @Nullable Void attachment) {
+			try {
+				if (channel != null) {
+					channel.close();
+				}
+				if (replacedFile != null) {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException ignored) {}
+			Path target = replacedFile != null ? replacedFile : file;
+			writeDone(job, new JcyoProcessingException("Failed to write to file: " + target, exception));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package de.siphalor.jcyo.core.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Compares the written bytes against the current content of a file
+ * and only rewrites the file from the first differing byte onward, truncating or extending it as needed.
+ * <p>
+ * The differing tail is held back until the output is {@link #commit() committed},
+ * since the file may still be read as the input of the output that is written.
+ */
+public class TailRewritingOutputStream extends OutputStream {
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final long originalSize;
+	private final ByteBuffer original = ByteBuffer.allocate(READ_BUFFER_SIZE).flip();
+	/**
+	 * The number of bytes that have been written and match the original content.
+	 */
+	private long matched;
+	private boolean diverged;
+	private byte[] tail = new byte[0];
+	private int tailLength;
+	private boolean committed;
+
+	/**
+	 * @param channel a channel of the file that is readable and writable, which is not closed by this stream
+	 */
+	public TailRewritingOutputStream(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.originalSize = channel.size();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (committed) {
+			throw new IllegalStateException("Output has already been committed");
+		}
+		if (!diverged) {
+			int count = matchOriginal(b, off, len);
+			off += count;
+			len -= count;
+			if (len == 0) {
+				return;
+			}
+			diverged = true;
+		}
+		if (tailLength + len > tail.length) {
+			tail = Arrays.copyOf(tail, Math.max(tail.length * 2, tailLength + len));
+		}
+		System.arraycopy(b, off, tail, tailLength, len);
+		tailLength += len;
+	}
+
+	/**
+	 * @return the number of leading bytes that match the original content
+	 */
+	private int matchOriginal(byte[] b, int off, int len) throws IOException {
+		int count = 0;
+		while (count < len) {
+			if (!original.hasRemaining()) {
+				long readPosition = matched;
+				if (readPosition >= originalSize) {
+					break;
+				}
+				original.clear();
+				if (channel.read(original, readPosition) <= 0) {
+					original.flip();
+					break;
+				}
+				original.flip();
+			}
+			if (original.get() != b[off + count]) {
+				break;
+			}
+			count++;
+			matched++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return whether the output differs from the original content
+	 */
+	public boolean changed() {
+		return diverged || matched != originalSize;
+	}
+
+	/**
+	 * @return the offset of the first byte that differs from the original content
+	 */
+	public long divergenceOffset() {
+		return matched;
+	}
+
+	/**
+	 * Writes the differing tail and truncates the file to the length of the output.
+	 * Nothing is written to the file before, so the file stays untouched if rendering the output fails.
+	 */
+	public void commit() throws IOException {
+		if (committed) {
+			throw new IllegalStateException("Output has already been committed");
+		}
+		committed = true;
+		if (!changed()) {
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(tail, 0, tailLength);
+		long position = matched;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		channel.truncate(position);
+	}
+}
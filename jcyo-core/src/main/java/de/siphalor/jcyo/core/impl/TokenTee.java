@@ -0,0 +1,46 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.Token;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Passes the tokens of a stream on to a writer as they are read,
+ * so that a second output can be derived from the same stream without buffering it.
+ * Failures of the writer are rethrown as {@link UncheckedIOException}s.
+ */
+public class TokenTee implements TokenStream {
+	private final TokenStream source;
+	private final TokenWriter writer;
+
+	public TokenTee(TokenStream source, TokenWriter writer) {
+		this.source = source;
+		this.writer = writer;
+	}
+
+	@Override
+	public Token nextToken() {
+		Token token = source.nextToken();
+		write(token);
+		return token;
+	}
+
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		int count = source.nextTokens(tokens, offset, length);
+		for (int i = offset; i < offset + count; i++) {
+			write(tokens[i]);
+		}
+		return count;
+	}
+
+	private void write(Token token) {
+		try {
+			writer.write(token);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
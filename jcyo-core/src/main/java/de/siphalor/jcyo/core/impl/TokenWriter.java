@@ -3,121 +3,140 @@ package de.siphalor.jcyo.core.impl;
 import de.siphalor.jcyo.core.api.JcyoOptions;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
 import de.siphalor.jcyo.core.impl.token.*;
-import lombok.AccessLevel;
 import lombok.Data;
-import lombok.RequiredArgsConstructor;
 import org.jspecify.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-@RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 public class TokenWriter implements AutoCloseable {
-	private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("\r\n|\r|\n|$");
+	private static final int BATCH_SIZE = 64;
 
 	private final Writer writer;
+	/**
+	 * The writer, if it accepts the pre-encoded markers of the {@link #helper}.
+	 */
+	private final @Nullable DirectUtf8Writer directWriter;
 	private final JcyoHelper helper;
+	private final Token[] batch = new Token[BATCH_SIZE];
 
-	private @Nullable JcyoDisabledState disabledState;
+	/**
+	 * The state of the current disabled region, which is reused across regions.
+	 */
+	private final JcyoDisabledState disabledState = new JcyoDisabledState();
 
 	public TokenWriter(Writer writer, JcyoOptions options) {
 		this(writer, new JcyoHelper(options));
 	}
 
+	protected TokenWriter(Writer writer, JcyoHelper helper) {
+		this.writer = writer;
+		this.directWriter = writer instanceof DirectUtf8Writer direct ? direct : null;
+		this.helper = helper;
+	}
+
 	public void writeAll(TokenStream tokenStream) throws IOException {
-		Token token;
 		while (true) {
-			token = tokenStream.nextToken();
-			if (token instanceof EofToken) {
-				return;
+			int count = tokenStream.nextTokens(batch, 0, BATCH_SIZE);
+			for (int i = 0; i < count; i++) {
+				if (batch[i] instanceof EofToken) {
+					return;
+				}
+				write(batch[i]);
 			}
-			write(token);
 		}
 	}
 
 	public void write(Token token) throws IOException {
-		if (disabledState == null) {
+		JcyoDisabledRegionStartToken disabledStartToken = disabledState.disabledStartToken();
+		if (disabledStartToken == null) {
 			writePlain(token);
 			return;
 		}
-		switch (disabledState.disabledStartToken().suggestedCommentStyle()) {
+		switch (disabledStartToken.suggestedCommentStyle()) {
 			case LINE -> writeInDisabledLineMode(token);
 			case FLEX -> writeInDisabledFlexMode(token);
 		}
 	}
 
 	private void writePlain(Token token) throws IOException {
-		assert disabledState == null;
+		assert !disabledState.active();
 		switch (token) {
 			case EofToken _ -> {}
-			case RepresentableToken representableToken -> writer.write(representableToken.raw());
-			case JcyoDisabledRegionStartToken startToken -> disabledState = new JcyoDisabledState(startToken);
+			case RepresentableToken representableToken -> writeRaw(representableToken);
+			case JcyoDisabledRegionStartToken startToken -> disabledState.enter(startToken);
 			default -> throw new IllegalArgumentException("Unexpected token: " + token);
 		}
 	}
 
 	private void writeInDisabledLineMode(Token token) throws IOException {
-		assert disabledState != null;
+		assert disabledState.active();
 		switch (token) {
 			case EofToken _ -> {}
-			case JcyoDisabledRegionEndToken _ -> disabledState = null;
+			case JcyoDisabledRegionEndToken _ -> disabledState.exit();
 			case JcyoDisabledRegionStartToken _ -> throw new IllegalArgumentException(
 					"Unexpected disabled region start token, already in disabled region: " + token
 			);
 			case LineBreakToken lineBreakToken -> {
-				writer.write(lineBreakToken.raw());
+				writeRaw(lineBreakToken);
 				disabledState.reset();
 			}
-			case WhitespaceToken whitespaceToken when !disabledState.disabledPending() ->
-					writer.write(whitespaceToken.raw());
+			case WhitespaceToken whitespaceToken when !disabledState.disabledPending() -> writeRaw(whitespaceToken);
 			case WhitespaceToken whitespaceToken when
-					disabledState.fulfilledIndent() < disabledState.disabledStartToken().suggestedIndent().length() -> {
-				String suggestedIndent = disabledState.disabledStartToken().suggestedIndent();
-				if ((whitespaceToken.codepoint() == '\t') == (suggestedIndent.charAt(disabledState.fulfilledIndent()) == '\t')) {
-					disabledState.fulfilledIndent(disabledState.fulfilledIndent() + 1);
-					writer.write(whitespaceToken.raw());
-				} else {
-					writer.write(helper.disabledForLine());
-					disabledState.disabledPending(false);
-					writer.write(whitespaceToken.raw());
-				}
-			}
+					disabledState.fulfilledIndent() < disabledState.suggestedIndent().length() ->
+					writeIndentInDisabledLineMode(whitespaceToken.raw());
 			case PlainJavaCommentToken commentToken when commentToken.commentStyle() == CommentStyle.FLEX ->
 					writeFlexCommentInDisabledLineMode(commentToken);
 			case RepresentableToken representableToken when disabledState.disabledPending() -> {
-				writer.write(helper.disabledForLine());
+				writeMarker(helper.disabledForLine(), helper.disabledForLineBytes());
 				disabledState.disabledPending(false);
-				writer.write(representableToken.raw());
+				writeRaw(representableToken);
 			}
-			case RepresentableToken representableToken -> writer.write(representableToken.raw());
+			case RepresentableToken representableToken -> writeRaw(representableToken);
+		}
+	}
+
+	/**
+	 * Writes as much of the whitespace as matches the suggested indent and inserts the disabled marker after it.
+	 */
+	private void writeIndentInDisabledLineMode(String whitespace) throws IOException {
+		assert disabledState.active();
+		String suggestedIndent = disabledState.suggestedIndent();
+		int fulfilledIndent = disabledState.fulfilledIndent();
+		int matched = 0;
+		while (matched < whitespace.length()
+				&& fulfilledIndent < suggestedIndent.length()
+				&& (whitespace.charAt(matched) == '\t') == (suggestedIndent.charAt(fulfilledIndent) == '\t')) {
+			matched++;
+			fulfilledIndent++;
+		}
+		disabledState.fulfilledIndent(fulfilledIndent);
+		writer.write(whitespace, 0, matched);
+		if (matched < whitespace.length()) {
+			writeMarker(helper.disabledForLine(), helper.disabledForLineBytes());
+			disabledState.disabledPending(false);
+			writer.write(whitespace, matched, whitespace.length() - matched);
 		}
 	}
 
 	private void writeFlexCommentInDisabledLineMode(PlainJavaCommentToken commentToken) throws IOException {
-		assert disabledState != null;
+		assert disabledState.active();
 		if (disabledState.disabledPending()) {
-			writer.write(helper.disabledForLine());
+			writeMarker(helper.disabledForLine(), helper.disabledForLineBytes());
 			disabledState.disabledPending(false);
 		}
 		String raw = commentToken.raw();
-		Matcher matcher = LINE_BREAK_PATTERN.matcher(raw);
-		int pos = 0;
-		if (matcher.find()) {
-			writer.write(raw, pos, matcher.end() - pos);
-			pos = matcher.end();
-		}
-		String suggestedIndent = disabledState.disabledStartToken().suggestedIndent();
-		while (matcher.find()) {
+		int lineEnd = findLineBreak(raw, 0);
+		int pos = lineEnd + lineBreakLength(raw, lineEnd);
+		writer.write(raw, 0, pos);
+		String suggestedIndent = disabledState.suggestedIndent();
+		// Every line after a line break, including a last empty one
+		while (lineEnd < raw.length()) {
 			int lineStart = pos;
-			for (; pos < matcher.start(); pos++) {
+			lineEnd = findLineBreak(raw, pos);
+			for (; pos < lineEnd; pos++) {
 				if (pos - lineStart >= suggestedIndent.length()) {
-					if (pos + 1 >= matcher.start()) {
-						writer.write(helper.disabledForLineNoWhitespace());
-					} else {
-						writer.write(helper.disabledForLine());
-					}
+					writeDisabledMarkerInComment(pos + 1 >= lineEnd);
 					break;
 				}
 
@@ -128,52 +147,98 @@ public class TokenWriter implements AutoCloseable {
 				} else if (rawChar == '\t' && suggestedIndentChar == '\t') {
 					writer.write(rawChar);
 				} else {
-					if (pos + 1 >= matcher.start()) {
-						writer.write(helper.disabledForLineNoWhitespace());
-					} else {
-						writer.write(helper.disabledForLine());
-					}
+					writeDisabledMarkerInComment(pos + 1 >= lineEnd);
 					break;
 				}
 			}
-			writer.write(raw, pos, matcher.end() - pos);
-			pos = matcher.end();
+			int nextLineStart = lineEnd + lineBreakLength(raw, lineEnd);
+			writer.write(raw, pos, nextLineStart - pos);
+			pos = nextLineStart;
+		}
+	}
+
+	private void writeDisabledMarkerInComment(boolean atLineEnd) throws IOException {
+		if (atLineEnd) {
+			writeMarker(helper.disabledForLineNoWhitespace(), helper.disabledForLineNoWhitespaceBytes());
+		} else {
+			writeMarker(helper.disabledForLine(), helper.disabledForLineBytes());
+		}
+	}
+
+	/**
+	 * @return the index of the first {@code '\r'} or {@code '\n'} at or after {@code from}, or the length of the text
+	 */
+	private static int findLineBreak(String text, int from) {
+		for (int i = from; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r') {
+				return i;
+			}
 		}
+		return text.length();
+	}
+
+	/**
+	 * @return the length of the line break at the given index, which is {@code 0} at the end of the text
+	 */
+	private static int lineBreakLength(String text, int index) {
+		if (index >= text.length()) {
+			return 0;
+		}
+		if (text.charAt(index) == '\r' && index + 1 < text.length() && text.charAt(index + 1) == '\n') {
+			return 2;
+		}
+		return 1;
 	}
 
 	private void writeInDisabledFlexMode(Token token) throws IOException {
-		assert disabledState != null;
+		assert disabledState.active();
 		switch (token) {
 			case EofToken _ -> {}
 			case JcyoDisabledRegionEndToken _ -> {
-				writer.write(helper.disabledForFlexEnd());
-				disabledState = null;
+				writeMarker(helper.disabledForFlexEnd(), helper.disabledForFlexEndBytes());
+				disabledState.exit();
 			}
 			case JcyoDisabledRegionStartToken _ -> throw new IllegalArgumentException(
 					"Unexpected disabled region start token, already in disabled region: " + token
 			);
 			case JcyoEndToken endToken -> {
-				writer.write(endToken.raw());
+				writeRaw(endToken);
 				disabledState.disabledPending(true);
 			}
 			case PlainJavaCommentToken commentToken when commentToken.commentStyle() == CommentStyle.FLEX -> {
-				writer.write(commentToken.raw());
+				writeRaw(commentToken);
 				disabledState.disabledPending(true);
 			}
 			case LineBreakToken lineBreakToken when disabledState.disabledPending() -> {
-				writer.write(helper.disabledForFlexStartNoWhitespace());
+				writeMarker(helper.disabledForFlexStartNoWhitespace(), helper.disabledForFlexStartNoWhitespaceBytes());
 				disabledState.disabledPending(false);
-				writer.write(lineBreakToken.raw());
+				writeRaw(lineBreakToken);
 			}
 			case RepresentableToken representableToken when disabledState.disabledPending() -> {
-				writer.write(helper.disabledForFlexStart());
+				writeMarker(helper.disabledForFlexStart(), helper.disabledForFlexStartBytes());
 				disabledState.disabledPending(false);
-				writer.write(representableToken.raw());
+				writeRaw(representableToken);
 			}
-			case RepresentableToken representableToken -> writer.write(representableToken.raw());
+			case RepresentableToken representableToken -> writeRaw(representableToken);
 		}
 	}
 
+	private void writeMarker(String marker, byte[] encodedMarker) throws IOException {
+		if (directWriter != null) {
+			directWriter.writeEncoded(encodedMarker);
+		} else {
+			writer.write(marker);
+		}
+	}
+
+	/**
+	 * Writes the raw text of a token that isn't modified.
+	 */
+	protected void writeRaw(RepresentableToken token) throws IOException {
+		writer.write(token.raw());
+	}
+
 	@Override
 	public void close() throws IOException {
 		writer.close();
@@ -181,10 +246,31 @@ public class TokenWriter implements AutoCloseable {
 
 	@Data
 	private static class JcyoDisabledState {
-		private final JcyoDisabledRegionStartToken disabledStartToken;
+		/**
+		 * The token that started the current disabled region, or {@code null} if there is none.
+		 */
+		private @Nullable JcyoDisabledRegionStartToken disabledStartToken;
 		private boolean disabledPending = true;
 		private int fulfilledIndent;
 
+		public boolean active() {
+			return disabledStartToken != null;
+		}
+
+		public void enter(JcyoDisabledRegionStartToken startToken) {
+			disabledStartToken = startToken;
+			reset();
+		}
+
+		public void exit() {
+			disabledStartToken = null;
+		}
+
+		public String suggestedIndent() {
+			assert disabledStartToken != null;
+			return disabledStartToken.suggestedIndent();
+		}
+
 		public void reset() {
 			disabledPending = true;
 			fulfilledIndent = 0;
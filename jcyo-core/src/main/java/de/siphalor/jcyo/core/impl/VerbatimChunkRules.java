@@ -0,0 +1,86 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.impl.token.TokenKind;
+import de.siphalor.jcyo.core.impl.token.VerbatimChunkToken;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Decides which lexer tokens may be merged into {@link VerbatimChunkToken}s.
+ * <p>
+ * Only ordinary code tokens are chunked, and only after the header of the file
+ * (up to the first {@code {}} outside of parentheses, since e.g. package annotations may contain array initializers),
+ * since the imports are inspected token by token.
+ * The contents of directives and of disabled flex comments are never chunked.
+ */
+public class VerbatimChunkRules {
+	private boolean headerDone;
+	/**
+	 * The depth of the parentheses in the header, outside of comments.
+	 */
+	private int parenthesesDepth;
+	/**
+	 * The start of the comment that is currently open and whose contents must not be chunked.
+	 */
+	private @Nullable TokenKind openComment;
+
+	/**
+	 * Creates rules for lexing that starts in the middle of a file, right at a line start after its header.
+	 */
+	public static VerbatimChunkRules afterHeader() {
+		VerbatimChunkRules rules = new VerbatimChunkRules();
+		rules.headerDone = true;
+		return rules;
+	}
+
+	/**
+	 * @return whether the current state is the same as the initial state of {@link #afterHeader()}
+	 */
+	public boolean isAfterHeader() {
+		return headerDone && openComment == null;
+	}
+
+	/**
+	 * Must be called for every lexer token in order.
+	 * @param payload the codepoint for operators, ignored otherwise
+	 * @return whether the token may be part of a chunk
+	 */
+	public boolean accept(TokenKind kind, int payload) {
+		switch (kind) {
+			case LINE_DIRECTIVE_START, FLEX_DIRECTIVE_START, FLEX_DISABLED_START -> {
+				openComment = kind;
+				return false;
+			}
+			case LINE_BREAK -> {
+				if (openComment == TokenKind.LINE_DIRECTIVE_START) {
+					openComment = null;
+				}
+				return false;
+			}
+			case END, IMPLICIT_END -> {
+				if (openComment != TokenKind.LINE_DIRECTIVE_START) {
+					openComment = null;
+				}
+				return false;
+			}
+			case OPERATOR -> {
+				if (!headerDone && openComment == null) {
+					if (payload == '(') {
+						parenthesesDepth++;
+					} else if (payload == ')') {
+						parenthesesDepth--;
+					} else if (payload == '{' && parenthesesDepth == 0) {
+						headerDone = true;
+					}
+				}
+			}
+			default -> {}
+		}
+		if (!headerDone || openComment != null) {
+			return false;
+		}
+		return switch (kind) {
+			case IDENTIFIER, KEYWORD, OPERATOR, WHITESPACE, NUMBER_LITERAL, STRING_LITERAL, CHARACTER_LITERAL -> true;
+			default -> false;
+		};
+	}
+}
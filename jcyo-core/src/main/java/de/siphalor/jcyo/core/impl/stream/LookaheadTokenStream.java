@@ -0,0 +1,78 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.Token;
+
+/**
+ * A peekable stream with arbitrary lookahead, that reads its source in batches into a {@link TokenBuffer}.
+ * <p>
+ * Reading can be {@link #mark() marked} and {@link #reset() rewound},
+ * so that e.g. a directive can be parsed first and then be passed through as is.
+ * Since it reads ahead, the source must not be consumed by anything else.
+ */
+public class LookaheadTokenStream implements PeekableTokenStream {
+	private static final int BATCH_SIZE = 64;
+
+	private final TokenStream source;
+	private final TokenBuffer buffer = new TokenBuffer();
+	private final Token[] batch = new Token[BATCH_SIZE];
+
+	public LookaheadTokenStream(TokenStream source) {
+		this.source = source;
+	}
+
+	@Override
+	public Token nextToken() {
+		fill(1);
+		return buffer.nextToken();
+	}
+
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		fill(1);
+		return buffer.nextTokens(tokens, offset, length);
+	}
+
+	@Override
+	public Token peekToken() {
+		return peekToken(0);
+	}
+
+	/**
+	 * @param index the offset from the next token
+	 */
+	public Token peekToken(int index) {
+		fill(index + 1);
+		return buffer.peekToken(index);
+	}
+
+	/**
+	 * @see TokenBuffer#mark()
+	 */
+	public void mark() {
+		buffer.mark();
+	}
+
+	/**
+	 * @see TokenBuffer#reset()
+	 * @return the number of tokens that have been read since the mark
+	 */
+	public int reset() {
+		return buffer.reset();
+	}
+
+	/**
+	 * @see TokenBuffer#unmark()
+	 */
+	public void unmark() {
+		buffer.unmark();
+	}
+
+	private void fill(int count) {
+		while (buffer.size() < count && !buffer.isEofPushed()) {
+			int read = source.nextTokens(batch, 0, BATCH_SIZE);
+			for (int i = 0; i < read; i++) {
+				buffer.pushToken(batch[i]);
+			}
+		}
+	}
+}
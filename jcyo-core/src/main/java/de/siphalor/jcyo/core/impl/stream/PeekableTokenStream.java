@@ -8,6 +8,14 @@ public interface PeekableTokenStream extends TokenStream {
 		return new PeekableTokenStreamImpl(tokenStream);
 	}
 
+	/**
+	 * Creates a peekable stream that reads the given stream in batches.
+	 * Since it reads ahead, the given stream must not be consumed by anything else.
+	 */
+	static PeekableTokenStream batching(TokenStream tokenStream) {
+		return new BatchingTokenStream(tokenStream);
+	}
+
 	@Override
 	Token nextToken();
 
@@ -31,6 +39,16 @@ public interface PeekableTokenStream extends TokenStream {
 			return inner.nextToken();
 		}
 
+		@Override
+		public int nextTokens(Token[] tokens, int offset, int length) {
+			if (peek != null && length > 0) {
+				tokens[offset] = peek;
+				peek = null;
+				return 1;
+			}
+			return inner.nextTokens(tokens, offset, length);
+		}
+
 		@Override
 		public Token peekToken() {
 			if (peek == null) {
@@ -39,4 +57,52 @@ public interface PeekableTokenStream extends TokenStream {
 			return peek;
 		}
 	}
+
+	class BatchingTokenStream implements PeekableTokenStream {
+		private static final int BATCH_SIZE = 64;
+
+		private final TokenStream inner;
+		private final Token[] batch = new Token[BATCH_SIZE];
+		private int position;
+		private int size;
+
+		private BatchingTokenStream(TokenStream inner) {
+			this.inner = inner;
+		}
+
+		@Override
+		public Token nextToken() {
+			if (position == size) {
+				fill();
+			}
+			return batch[position++];
+		}
+
+		@Override
+		public int nextTokens(Token[] tokens, int offset, int length) {
+			if (position == size) {
+				if (length >= BATCH_SIZE) {
+					return inner.nextTokens(tokens, offset, length);
+				}
+				fill();
+			}
+			int count = Math.min(length, size - position);
+			System.arraycopy(batch, position, tokens, offset, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public Token peekToken() {
+			if (position == size) {
+				fill();
+			}
+			return batch[position];
+		}
+
+		private void fill() {
+			size = inner.nextTokens(batch, 0, BATCH_SIZE);
+			position = 0;
+		}
+	}
 }
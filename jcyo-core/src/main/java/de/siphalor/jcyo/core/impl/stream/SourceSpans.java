@@ -0,0 +1,42 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.Token;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The source spans of the tokens that a {@link TokenTape#spannedStream spanned stream} has created.
+ * <p>
+ * Spans are looked up by the identity of the token objects,
+ * so tokens that the stages synthesize or modify never have a span, even if they are equal to a source token.
+ * Tokens may be registered and looked up from different threads, e.g. when the stages are pipelined.
+ */
+public class SourceSpans {
+	private final Map<Token, Integer> indices = new IdentityHashMap<>();
+	private final TokenTape tape;
+
+	SourceSpans(TokenTape tape) {
+		this.tape = tape;
+	}
+
+	synchronized void register(Token token, int index) {
+		indices.put(token, index);
+	}
+
+	/**
+	 * @return the index of the given token on the tape, or {@code -1} if it wasn't created from the tape
+	 */
+	public synchronized int indexOf(Token token) {
+		Integer index = indices.get(token);
+		return index != null ? index : -1;
+	}
+
+	public int start(int index) {
+		return tape.start(index);
+	}
+
+	public int end(int index) {
+		return tape.end(index);
+	}
+}
@@ -0,0 +1,174 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import org.jspecify.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring buffer that hands tokens over from exactly one producer thread
+ * to exactly one consumer thread, which reads it as a {@link TokenStream}.
+ * <p>
+ * Both sides first spin and then park for short periods while the ring is full, respectively empty.
+ * The producer must end with an {@link EofToken} or {@link #fail(Throwable) fail}.
+ */
+public class SpscTokenRing implements TokenStream {
+	private static final int SPINS = 128;
+	private static final long PARK_NANOS = 20_000;
+
+	private final Token[] tokens;
+	private final int mask;
+	/**
+	 * The number of tokens that have been published, only written by the producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * The number of tokens that have been consumed, only written by the consumer.
+	 */
+	private final AtomicLong head = new AtomicLong();
+	private volatile boolean cancelled;
+	private volatile @Nullable Throwable failure;
+
+	// Positions of the other side as last seen, to touch the shared counters less often
+	private long producerCachedHead;
+	private long consumerCachedTail;
+	private boolean eofReached;
+
+	/**
+	 * @param capacity the maximum number of tokens in flight, which is rounded up to a power of two of at least 4
+	 */
+	public SpscTokenRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(4, capacity) - 1) << 1;
+		this.tokens = new Token[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Publishes the given tokens, waiting for the consumer while the ring is full.
+	 * Must only be called from the producer thread.
+	 *
+	 * @return {@code false} if the consumer has {@link #cancel() cancelled} and the tokens have been discarded
+	 */
+	public boolean offer(Token[] batch, int offset, int length) {
+		long position = tail.get();
+		int attempt = 0;
+		while (length > 0) {
+			if (cancelled) {
+				return false;
+			}
+			int free = tokens.length - (int) (position - producerCachedHead);
+			if (free == 0) {
+				producerCachedHead = head.get();
+				if (position - producerCachedHead == tokens.length) {
+					backOff(attempt++);
+				}
+				continue;
+			}
+			attempt = 0;
+			int count = Math.min(free, length);
+			for (int i = 0; i < count; i++) {
+				tokens[(int) (position + i) & mask] = batch[offset + i];
+			}
+			position += count;
+			offset += count;
+			length -= count;
+			tail.lazySet(position);
+		}
+		return true;
+	}
+
+	/**
+	 * Makes the consumer rethrow the given exception once it has read all published tokens.
+	 * Must only be called from the producer thread, which must not publish anything afterward.
+	 */
+	public void fail(Throwable throwable) {
+		failure = throwable;
+	}
+
+	/**
+	 * Tells the producer to stop, since no more tokens will be consumed.
+	 * May be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public Token nextToken() {
+		if (eofReached) {
+			return EofToken.instance();
+		}
+		long position = awaitTokens();
+		int index = (int) position & mask;
+		Token token = tokens[index];
+		tokens[index] = null;
+		head.lazySet(position + 1);
+		if (token instanceof EofToken) {
+			eofReached = true;
+		}
+		return token;
+	}
+
+	@Override
+	public int nextTokens(Token[] batch, int offset, int length) {
+		if (eofReached) {
+			batch[offset] = EofToken.instance();
+			return 1;
+		}
+		long position = awaitTokens();
+		int count = (int) Math.min(consumerCachedTail - position, length);
+		for (int i = 0; i < count; i++) {
+			int index = (int) (position + i) & mask;
+			Token token = tokens[index];
+			tokens[index] = null;
+			batch[offset + i] = token;
+			if (token instanceof EofToken) {
+				eofReached = true;
+				count = i + 1;
+				break;
+			}
+		}
+		head.lazySet(position + count);
+		return count;
+	}
+
+	/**
+	 * Waits until at least one token is available.
+	 * @return the position of the next token to consume
+	 */
+	private long awaitTokens() {
+		long position = head.get();
+		int attempt = 0;
+		while (position == consumerCachedTail) {
+			// The failure must be read first, since it is set after the last tokens have been published
+			Throwable throwable = failure;
+			consumerCachedTail = tail.get();
+			if (position == consumerCachedTail) {
+				if (throwable != null) {
+					throw rethrow(throwable);
+				}
+				backOff(attempt++);
+			}
+		}
+		return position;
+	}
+
+	private static RuntimeException rethrow(Throwable throwable) {
+		if (throwable instanceof RuntimeException runtimeException) {
+			throw runtimeException;
+		} else if (throwable instanceof Error error) {
+			throw error;
+		}
+		throw new IllegalStateException("Token producer failed", throwable);
+	}
+
+	private static void backOff(int attempt) {
+		if (attempt < SPINS) {
+			Thread.onSpinWait();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+}
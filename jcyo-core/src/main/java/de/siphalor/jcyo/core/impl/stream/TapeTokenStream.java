@@ -0,0 +1,100 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import de.siphalor.jcyo.core.impl.token.TokenKind;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A cursor over a {@link TokenTape}.
+ * Besides the regular token stream methods, the current token can be inspected without creating a token object.
+ */
+public class TapeTokenStream implements PeekableTokenStream {
+	private final TokenTape tape;
+	/**
+	 * The registry of the source spans of the created tokens, or {@code null} if they aren't tracked.
+	 */
+	private final @Nullable SourceSpans spans;
+	private int cursor;
+	private @Nullable Token peeked;
+
+	TapeTokenStream(TokenTape tape, @Nullable SourceSpans spans) {
+		this.tape = tape;
+		this.spans = spans;
+	}
+
+	@Override
+	public Token nextToken() {
+		Token token = peekToken();
+		skip();
+		return token;
+	}
+
+	/**
+	 * Creates the tokens straight from the tape, without peeking and skipping each of them.
+	 */
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		if (length <= 0) {
+			return 0;
+		}
+		int count = 0;
+		if (peeked != null) {
+			Token token = peeked;
+			skip();
+			tokens[offset] = token;
+			if (token instanceof EofToken) {
+				return 1;
+			}
+			count = 1;
+		}
+		int available = Math.min(length - count, tape.size() - cursor);
+		for (int i = 0; i < available; i++) {
+			tokens[offset + count + i] = createToken(cursor + i);
+		}
+		cursor += available;
+		count += available;
+		if (count < length && cursor >= tape.size()) {
+			tokens[offset + count++] = EofToken.instance();
+		}
+		return count;
+	}
+
+	@Override
+	public Token peekToken() {
+		if (peeked == null) {
+			peeked = createToken(cursor);
+		}
+		return peeked;
+	}
+
+	private Token createToken(int index) {
+		if (spans == null) {
+			return tape.token(index);
+		}
+		Token token = tape.distinctToken(index);
+		if (tape.matchesSource(index)) {
+			spans.register(token, index);
+		}
+		return token;
+	}
+
+	public TokenKind peekKind() {
+		return tape.kind(cursor);
+	}
+
+	public int peekPayload() {
+		return cursor < tape.size() ? tape.payload(cursor) : 0;
+	}
+
+	public String peekText() {
+		return cursor < tape.size() ? tape.text(cursor) : "";
+	}
+
+	public void skip() {
+		if (cursor < tape.size()) {
+			cursor++;
+		}
+		peeked = null;
+	}
+}
@@ -3,11 +3,27 @@ package de.siphalor.jcyo.core.impl.stream;
 import de.siphalor.jcyo.core.impl.token.EofToken;
 import de.siphalor.jcyo.core.impl.token.Token;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.NoSuchElementException;
 
+/**
+ * A FIFO queue of tokens on a growable, power-of-two ring buffer.
+ * <p>
+ * Reading can be {@link #mark() marked} and later {@link #reset() rewound},
+ * as long as no tokens are pushed to the front in between.
+ */
 public class TokenBuffer implements TokenStream {
-	private final Deque<Token> buffer = new ArrayDeque<>();
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private Token[] tokens = new Token[DEFAULT_CAPACITY];
+	/**
+	 * The position of the next token to read.
+	 * Positions are only wrapped by the mask when accessing the array.
+	 */
+	private int head;
+	private int tail;
+	private boolean marked;
+	private int mark;
+	private boolean markEofReached;
 	private boolean eofPushed;
 	private boolean eofReached;
 
@@ -18,22 +34,32 @@ public class TokenBuffer implements TokenStream {
 		if (token instanceof EofToken) {
 			eofPushed = true;
 		}
-		buffer.add(token);
+		ensureCapacity();
+		tokens[tail++ & mask()] = token;
 	}
 
 	public void pushFrontToken(Token token) {
 		if (eofReached) {
 			throw new IllegalStateException("EOF token already reached, but got: " + token);
 		}
+		if (isMarked()) {
+			throw new IllegalStateException("Cannot push to the front of a marked buffer: " + token);
+		}
 		if (token instanceof EofToken) {
 			eofPushed = true;
-			buffer.clear();
+			clear();
 		}
-		buffer.addFirst(token);
+		ensureCapacity();
+		tokens[--head & mask()] = token;
 	}
 
 	public void clear() {
-		buffer.clear();
+		for (int position = isMarked() ? mark : head; position != tail; position++) {
+			tokens[position & mask()] = null;
+		}
+		head = 0;
+		tail = 0;
+		marked = false;
 	}
 
 	@Override
@@ -41,24 +67,149 @@ public class TokenBuffer implements TokenStream {
 		if (eofReached) {
 			return EofToken.instance();
 		}
-		Token token = buffer.remove();
+		if (head == tail) {
+			throw new NoSuchElementException("Token buffer is empty");
+		}
+		int index = head++ & mask();
+		Token token = tokens[index];
+		if (!isMarked()) {
+			tokens[index] = null;
+		}
 		if (token instanceof EofToken) {
 			eofReached = true;
 		}
 		return token;
 	}
 
+	/**
+	 * Reads buffered tokens only, so the batch ends early when the buffer runs empty.
+	 */
+	@Override
+	public int nextTokens(Token[] batch, int offset, int length) {
+		int count = 0;
+		while (count < length) {
+			Token token = nextToken();
+			batch[offset + count++] = token;
+			if (token instanceof EofToken || isEmpty()) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param index the offset from the next token to read
+	 * @return the buffered token at the given offset, or an {@link EofToken} if the offset is past the pushed EOF
+	 */
+	public Token peekToken(int index) {
+		if (index < 0) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		if (eofReached || index >= size()) {
+			if (eofPushed) {
+				return EofToken.instance();
+			}
+			throw new IndexOutOfBoundsException("Only " + size() + " tokens are buffered, but requested: " + index);
+		}
+		return tokens[head + index & mask()];
+	}
+
 	public boolean isEmpty() {
-		return buffer.isEmpty();
+		return head == tail;
+	}
+
+	public int size() {
+		return tail - head;
+	}
+
+	boolean isEofPushed() {
+		return eofPushed;
+	}
+
+	/**
+	 * Remembers the current read position, so that all tokens read from now on are retained for a {@link #reset()}.
+	 */
+	public void mark() {
+		unmark();
+		marked = true;
+		mark = head;
+		markEofReached = eofReached;
+	}
+
+	public boolean isMarked() {
+		return marked;
+	}
+
+	/**
+	 * Rewinds to the {@link #mark() mark} and removes it.
+	 * @return the number of tokens that have been read since the mark
+	 */
+	public int reset() {
+		if (!isMarked()) {
+			throw new IllegalStateException("Token buffer is not marked");
+		}
+		int rewound = head - mark;
+		head = mark;
+		eofReached = markEofReached;
+		marked = false;
+		return rewound;
+	}
+
+	/**
+	 * Removes the mark without rewinding, releasing the tokens that have been read since.
+	 */
+	public void unmark() {
+		if (!isMarked()) {
+			return;
+		}
+		for (int position = mark; position != head; position++) {
+			tokens[position & mask()] = null;
+		}
+		marked = false;
+	}
+
+	private int mask() {
+		return tokens.length - 1;
+	}
+
+	private void ensureCapacity() {
+		int start = isMarked() ? mark : head;
+		int used = tail - start;
+		if (used < tokens.length) {
+			return;
+		}
+		Token[] grown = new Token[tokens.length * 2];
+		for (int i = 0; i < used; i++) {
+			grown[i] = tokens[start + i & mask()];
+		}
+		tokens = grown;
+		// Rebase the positions, so that they start at the beginning of the new array
+		head -= start;
+		tail -= start;
+		mark -= start;
 	}
 
 	public TokenStream copying(TokenStream other) {
-		return () -> {
-			Token token = other.nextToken();
-			if (!(eofPushed && token instanceof EofToken)) {
-				pushToken(token);
+		return new TokenStream() {
+			@Override
+			public Token nextToken() {
+				Token token = other.nextToken();
+				if (!(eofPushed && token instanceof EofToken)) {
+					pushToken(token);
+				}
+				return token;
+			}
+
+			@Override
+			public int nextTokens(Token[] batch, int offset, int length) {
+				int count = other.nextTokens(batch, offset, length);
+				for (int i = offset; i < offset + count; i++) {
+					if (!(eofPushed && batch[i] instanceof EofToken)) {
+						pushToken(batch[i]);
+					}
+				}
+				return count;
 			}
-			return token;
 		};
 	}
 
@@ -0,0 +1,69 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads a token stream on another thread and hands the tokens over through a {@link SpscTokenRing},
+ * so that the stages before and after the pump run concurrently.
+ * <p>
+ * The source must not be used by anything else, since it is read from the pumping thread.
+ * Closing the pump stops the pumping thread and waits for it, so that the source may be released afterward.
+ */
+public class TokenPump implements TokenStream, AutoCloseable {
+	private static final int BATCH_SIZE = 64;
+
+	private final SpscTokenRing ring;
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	public TokenPump(TokenStream source, int capacity, Executor executor) {
+		this.ring = new SpscTokenRing(capacity);
+		executor.execute(() -> pump(source));
+	}
+
+	private void pump(TokenStream source) {
+		Token[] batch = new Token[BATCH_SIZE];
+		try {
+			while (true) {
+				int read = source.nextTokens(batch, 0, BATCH_SIZE);
+				if (!ring.offer(batch, 0, read) || batch[read - 1] instanceof EofToken) {
+					return;
+				}
+			}
+		} catch (Throwable e) {
+			ring.fail(e);
+		} finally {
+			finished.countDown();
+		}
+	}
+
+	@Override
+	public Token nextToken() {
+		return ring.nextToken();
+	}
+
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		return ring.nextTokens(tokens, offset, length);
+	}
+
+	@Override
+	public void close() {
+		ring.cancel();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -14,6 +14,26 @@ public interface TokenStream {
 
 	Token nextToken();
 
+	/**
+	 * Reads a batch of tokens into the given array.
+	 * Implementations may return fewer tokens than requested at any time,
+	 * but an {@link EofToken} always ends a batch.
+	 * <p>
+	 * The default implementation calls {@link #nextToken()} for every token.
+	 * Streams that can produce tokens more directly, e.g. straight from a {@link TokenTape}, override it.
+	 * @return the number of tokens read, at least one if {@code length} is positive
+	 */
+	default int nextTokens(Token[] tokens, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			Token token = nextToken();
+			tokens[offset + i] = token;
+			if (token instanceof EofToken) {
+				return i + 1;
+			}
+		}
+		return length;
+	}
+
 	default Stream<Token> stream() {
 		return Stream.generate(this::nextToken).takeWhile(token -> !(token instanceof EofToken));
 	}
@@ -0,0 +1,200 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.CommentStyle;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A growable, struct-of-arrays storage for tokens that only refer to offsets in their source.
+ * Token objects and texts are only created on request.
+ */
+public class TokenTape {
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final TokenKind[] KINDS = TokenKind.values();
+
+	private byte[] kinds = new byte[DEFAULT_CAPACITY];
+	private int[] starts = new int[DEFAULT_CAPACITY];
+	private int[] ends = new int[DEFAULT_CAPACITY];
+	private int[] payloads = new int[DEFAULT_CAPACITY];
+	private int size;
+	/**
+	 * Texts of tokens that don't match their offsets in the source.
+	 */
+	private final Map<Integer, String> textOverrides = new HashMap<>();
+	private @Nullable TextSource source;
+
+	public void reset(TextSource source) {
+		this.source = source;
+		size = 0;
+		textOverrides.clear();
+	}
+
+	public void add(TokenKind kind, int start, int end, int payload) {
+		if (size == kinds.length) {
+			grow();
+		}
+		kinds[size] = (byte) kind.ordinal();
+		starts[size] = start;
+		ends[size] = end;
+		payloads[size] = payload;
+		size++;
+	}
+
+	public void add(TokenKind kind, int start, int end, int payload, String text) {
+		textOverrides.put(size, text);
+		add(kind, start, end, payload);
+	}
+
+	/**
+	 * Appends all tokens of the other tape.
+	 * Both tapes must refer to the same source, since the offsets are copied as they are.
+	 */
+	public void append(TokenTape other) {
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.kinds, 0, kinds, size, other.size);
+		System.arraycopy(other.starts, 0, starts, size, other.size);
+		System.arraycopy(other.ends, 0, ends, size, other.size);
+		System.arraycopy(other.payloads, 0, payloads, size, other.size);
+		for (Map.Entry<Integer, String> override : other.textOverrides.entrySet()) {
+			textOverrides.put(size + override.getKey(), override.getValue());
+		}
+		size += other.size;
+	}
+
+	private void ensureCapacity(int capacity) {
+		while (kinds.length < capacity) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		payloads = Arrays.copyOf(payloads, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public TokenKind kind(int index) {
+		if (index >= size) {
+			return TokenKind.EOF;
+		}
+		return KINDS[kinds[index]];
+	}
+
+	public int start(int index) {
+		return starts[index];
+	}
+
+	public int end(int index) {
+		return ends[index];
+	}
+
+	public int payload(int index) {
+		return payloads[index];
+	}
+
+	public String text(int index) {
+		if (!textOverrides.isEmpty()) {
+			String text = textOverrides.get(index);
+			if (text != null) {
+				return text;
+			}
+		}
+		assert source != null;
+		return source.text(starts[index], ends[index]);
+	}
+
+	public Token token(int index) {
+		int payload = index < size ? payloads[index] : 0;
+		return switch (kind(index)) {
+			case EOF -> EofToken.instance();
+			case IDENTIFIER -> new IdentifierToken(text(index));
+			case KEYWORD -> JavaKeywordToken.of(JavaKeyword.byOrdinal(payload));
+			case OPERATOR -> OperatorToken.of(payload);
+			case WHITESPACE -> payload != 0
+					? WhitespaceToken.ofRun(payload, ends[index] - starts[index])
+					: new WhitespaceToken(text(index));
+			case LINE_BREAK -> textOverrides.containsKey(index)
+					? new LineBreakToken(text(index))
+					: LineBreakToken.of(payload, ends[index] - starts[index]);
+			case NUMBER_LITERAL -> new NumberLiteralToken(text(index));
+			case STRING_LITERAL -> new StringLiteralToken(text(index));
+			case CHARACTER_LITERAL -> new CharacterLiteralToken(text(index));
+			case LINE_COMMENT -> new PlainJavaCommentToken(text(index), CommentStyle.LINE, false);
+			case LINE_JAVADOC -> new PlainJavaCommentToken(text(index), CommentStyle.LINE, true);
+			case FLEX_COMMENT -> new PlainJavaCommentToken(text(index), CommentStyle.FLEX, false);
+			case FLEX_JAVADOC -> new PlainJavaCommentToken(text(index), CommentStyle.FLEX, true);
+			case LINE_DIRECTIVE_START -> new JcyoDirectiveStartToken(text(index), CommentStyle.LINE);
+			case FLEX_DIRECTIVE_START -> new JcyoDirectiveStartToken(text(index), CommentStyle.FLEX);
+			case LINE_DISABLED_START -> new JcyoDisabledStartToken(text(index), CommentStyle.LINE);
+			case FLEX_DISABLED_START -> new JcyoDisabledStartToken(text(index), CommentStyle.FLEX);
+			case END -> textOverrides.containsKey(index) ? new JcyoEndToken(text(index)) : JcyoEndToken.explicit();
+			case IMPLICIT_END -> JcyoEndToken.implicit();
+			case VERBATIM_CHUNK -> textOverrides.containsKey(index)
+					? new VerbatimChunkToken(text(index))
+					: new VerbatimChunkToken(text(index), starts[index], ends[index]);
+		};
+	}
+
+	/**
+	 * Like {@link #token}, but never returns a cached token object,
+	 * so that the token can be told apart from equal tokens that are created elsewhere.
+	 */
+	Token distinctToken(int index) {
+		if (index >= size || textOverrides.containsKey(index)) {
+			return token(index);
+		}
+		return switch (kind(index)) {
+			case KEYWORD -> new JavaKeywordToken(JavaKeyword.byOrdinal(payloads[index]));
+			case OPERATOR -> new OperatorToken(payloads[index]);
+			case WHITESPACE -> new WhitespaceToken(text(index));
+			case LINE_BREAK -> new LineBreakToken(text(index));
+			case END -> new JcyoEndToken(text(index));
+			case IMPLICIT_END -> new JcyoEndToken("");
+			default -> token(index);
+		};
+	}
+
+	/**
+	 * @return whether the text of the token is exactly its span in the source
+	 */
+	boolean matchesSource(int index) {
+		return index < size && (textOverrides.isEmpty() || !textOverrides.containsKey(index));
+	}
+
+	/**
+	 * Creates a new stream with its own cursor over the tokens of this tape.
+	 */
+	public TapeTokenStream stream() {
+		return new TapeTokenStream(this, null);
+	}
+
+	/**
+	 * Creates a new stream like {@link #stream()},
+	 * that registers the source span of every token that matches its source in the given spans.
+	 */
+	public TapeTokenStream spannedStream(SourceSpans spans) {
+		return new TapeTokenStream(this, spans);
+	}
+
+	/**
+	 * Creates an empty registry for the tokens of {@link #spannedStream spanned streams} over this tape.
+	 */
+	public SourceSpans sourceSpans() {
+		return new SourceSpans(this);
+	}
+
+	@FunctionalInterface
+	public interface TextSource {
+		String text(int start, int end);
+	}
+}
@@ -0,0 +1,20 @@
+package de.siphalor.jcyo.core.impl.token;
+
+final class CodepointStrings {
+	private static final String[] ASCII = new String[128];
+
+	static {
+		for (int i = 0; i < ASCII.length; i++) {
+			ASCII[i] = String.valueOf((char) i);
+		}
+	}
+
+	private CodepointStrings() {}
+
+	static String of(int codepoint) {
+		if (codepoint >= 0 && codepoint < ASCII.length) {
+			return ASCII[codepoint];
+		}
+		return Character.toString(codepoint);
+	}
+}
@@ -5,9 +5,6 @@ import lombok.RequiredArgsConstructor;
 import org.jspecify.annotations.Nullable;
 
 import java.util.Arrays;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Getter
 @RequiredArgsConstructor
@@ -84,11 +81,73 @@ public enum JavaKeyword {
 	YIELD("yield"),
 	;
 
-	private static final Map<String, JavaKeyword> KEYWORDS = Arrays.stream(JavaKeyword.values())
-			.collect(Collectors.toMap(JavaKeyword::text, Function.identity()));
+	private static final JavaKeyword[] VALUES = values();
+	public static final int MAX_LENGTH = Arrays.stream(VALUES).mapToInt(keyword -> keyword.text().length()).max().orElseThrow();
 
-	public static @Nullable JavaKeyword getKeyword(String text) {
-		return KEYWORDS.get(text);
+	/**
+	 * Multiplier of the perfect hash over the first two and last two characters and the length of the keywords.
+	 * If the keywords change, a new multiplier must be searched for that is free of collisions.
+	 */
+	private static final int HASH_MULTIPLIER = 0xf6d1bce5;
+	private static final int HASH_BITS = 8;
+	private static final JavaKeyword[] BY_HASH = new JavaKeyword[1 << HASH_BITS];
+
+	static {
+		for (JavaKeyword keyword : VALUES) {
+			String text = keyword.text();
+			int length = text.length();
+			int hash = hash(
+					text.charAt(0),
+					length > 1 ? text.charAt(1) : 0,
+					length > 1 ? text.charAt(length - 2) : 0,
+					text.charAt(length - 1),
+					length
+			);
+			if (BY_HASH[hash] != null) {
+				throw new IllegalStateException("Keyword hash collision between " + BY_HASH[hash] + " and " + keyword);
+			}
+			BY_HASH[hash] = keyword;
+		}
+	}
+
+	private static int hash(int first, int second, int penultimate, int last, int length) {
+		int packed = first | second << 8 | penultimate << 16 | last << 24;
+		return (packed + length) * HASH_MULTIPLIER >>> (Integer.SIZE - HASH_BITS);
+	}
+
+	public static @Nullable JavaKeyword getKeyword(CharSequence text) {
+		int length = text.length();
+		if (length == 0 || length > MAX_LENGTH) {
+			return null;
+		}
+		JavaKeyword keyword = candidate(
+				text.charAt(0),
+				length > 1 ? text.charAt(1) : 0,
+				length > 1 ? text.charAt(length - 2) : 0,
+				text.charAt(length - 1),
+				length
+		);
+		if (keyword != null && keyword.text().contentEquals(text)) {
+			return keyword;
+		}
+		return null;
+	}
+
+	/**
+	 * Looks up the only keyword that might be spelled by a range of characters, without building a string.
+	 * The second and penultimate characters must be {@code 0} if the range is only one character long.
+	 * @return the candidate of the same length, whose {@link #text()} must still be compared against the range
+	 */
+	public static @Nullable JavaKeyword candidate(int first, int second, int penultimate, int last, int length) {
+		JavaKeyword keyword = BY_HASH[hash(first, second, penultimate, last, length)];
+		if (keyword != null && keyword.text().length() == length) {
+			return keyword;
+		}
+		return null;
+	}
+
+	public static JavaKeyword byOrdinal(int ordinal) {
+		return VALUES[ordinal];
 	}
 
 	private final String text;
@@ -1,6 +1,16 @@
 package de.siphalor.jcyo.core.impl.token;
 
+import java.util.Arrays;
+
 public record JavaKeywordToken(JavaKeyword keyword) implements RepresentableToken {
+	private static final JavaKeywordToken[] INSTANCES = Arrays.stream(JavaKeyword.values())
+			.map(JavaKeywordToken::new)
+			.toArray(JavaKeywordToken[]::new);
+
+	public static JavaKeywordToken of(JavaKeyword keyword) {
+		return INSTANCES[keyword.ordinal()];
+	}
+
 	@Override
 	public String raw() {
 		return keyword.text();
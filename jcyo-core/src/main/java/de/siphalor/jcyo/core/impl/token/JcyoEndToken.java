@@ -2,7 +2,13 @@ package de.siphalor.jcyo.core.impl.token;
 
 public record JcyoEndToken(String raw) implements RepresentableToken {
 	private static final JcyoEndToken IMPLICIT = new JcyoEndToken("");
+	private static final JcyoEndToken EXPLICIT = new JcyoEndToken("*/");
+
 	public static JcyoEndToken implicit() {
 		return IMPLICIT;
 	}
+
+	public static JcyoEndToken explicit() {
+		return EXPLICIT;
+	}
 }
@@ -1,4 +1,19 @@
 package de.siphalor.jcyo.core.impl.token;
 
 public record LineBreakToken(String raw) implements RepresentableToken {
+	private static final LineBreakToken LF = new LineBreakToken("\n");
+	private static final LineBreakToken CR = new LineBreakToken("\r");
+	private static final LineBreakToken CRLF = new LineBreakToken("\r\n");
+	private static final LineBreakToken LFCR = new LineBreakToken("\n\r");
+
+	/**
+	 * @param first the first character of the line break, either {@code '\n'} or {@code '\r'}
+	 * @param length the number of characters in the line break, either one or two
+	 */
+	public static LineBreakToken of(int first, int length) {
+		if (first == '\r') {
+			return length == 1 ? CR : CRLF;
+		}
+		return length == 1 ? LF : LFCR;
+	}
 }
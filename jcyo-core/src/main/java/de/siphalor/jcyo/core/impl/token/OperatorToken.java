@@ -1,9 +1,24 @@
 package de.siphalor.jcyo.core.impl.token;
 
 public record OperatorToken(int codepoint) implements RepresentableToken {
+	private static final OperatorToken[] ASCII = new OperatorToken[128];
+
+	static {
+		for (int i = 0; i < ASCII.length; i++) {
+			ASCII[i] = new OperatorToken(i);
+		}
+	}
+
+	public static OperatorToken of(int codepoint) {
+		if (codepoint >= 0 && codepoint < ASCII.length) {
+			return ASCII[codepoint];
+		}
+		return new OperatorToken(codepoint);
+	}
+
 	@Override
 	public String raw() {
-		return new String(new int[] { codepoint }, 0, 1);
+		return CodepointStrings.of(codepoint);
 	}
 
 	@Override
@@ -12,6 +12,7 @@ public sealed interface RepresentableToken extends Token
 		OperatorToken,
 		PlainJavaCommentToken,
 		StringLiteralToken,
+		VerbatimChunkToken,
 		WhitespaceToken {
 	String raw();
 }
@@ -0,0 +1,54 @@
+package de.siphalor.jcyo.core.impl.token;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The kinds of tokens that can be produced from the input, e.g. for storing tokens in primitive arrays.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum TokenKind {
+	EOF(false),
+	IDENTIFIER(true),
+	/**
+	 * The payload is the ordinal of the {@link JavaKeyword}.
+	 */
+	KEYWORD(false),
+	/**
+	 * The payload is the codepoint.
+	 */
+	OPERATOR(false),
+	/**
+	 * A run of whitespace.
+	 * The payload is the repeated codepoint if the run consists of a single ASCII character, otherwise {@code 0}.
+	 */
+	WHITESPACE(false),
+	/**
+	 * The payload is the first character of the line break.
+	 */
+	LINE_BREAK(true),
+	NUMBER_LITERAL(true),
+	STRING_LITERAL(true),
+	CHARACTER_LITERAL(true),
+	LINE_COMMENT(true),
+	LINE_JAVADOC(true),
+	FLEX_COMMENT(true),
+	FLEX_JAVADOC(true),
+	LINE_DIRECTIVE_START(true),
+	FLEX_DIRECTIVE_START(true),
+	LINE_DISABLED_START(true),
+	FLEX_DISABLED_START(true),
+	END(true),
+	IMPLICIT_END(false),
+	/**
+	 * A span of multiple ordinary tokens, see {@link VerbatimChunkToken}.
+	 */
+	VERBATIM_CHUNK(true),
+	;
+
+	/**
+	 * Whether the text of tokens of this kind is taken from the input.
+	 */
+	private final boolean textual;
+}
@@ -0,0 +1,24 @@
+package de.siphalor.jcyo.core.impl.token;
+
+/**
+ * A span of ordinary code that no stage needs to inspect token by token.
+ * It only consists of identifiers, keywords, operators, literals and the whitespace between them,
+ * so its tokens can be recovered by lexing its raw text again.
+ * <p>
+ * A chunk never starts or ends with whitespace.
+ *
+ * @param start the offset of the chunk in its source, or {@code -1} if it isn't known
+ * @param end the end offset of the chunk in its source, or {@code -1} if it isn't known
+ */
+public record VerbatimChunkToken(String raw, int start, int end) implements RepresentableToken {
+	public VerbatimChunkToken(String raw) {
+		this(raw, -1, -1);
+	}
+
+	/**
+	 * @return whether the raw text is known to be found at the start and end offsets in the source
+	 */
+	public boolean hasSourceSpan() {
+		return start >= 0;
+	}
+}
@@ -2,13 +2,77 @@ package de.siphalor.jcyo.core.impl.token;
 
 import lombok.Value;
 
+/**
+ * A contiguous run of whitespace characters, not including line breaks.
+ */
 @Value
 public class WhitespaceToken implements RepresentableToken {
-	int codepoint;
+	private static final int CACHED_RUN_LENGTH = 64;
+	private static final WhitespaceToken[] ASCII = new WhitespaceToken[128];
+	private static final WhitespaceToken[] SPACES = new WhitespaceToken[CACHED_RUN_LENGTH + 1];
+	private static final WhitespaceToken[] TABS = new WhitespaceToken[CACHED_RUN_LENGTH + 1];
+
+	static {
+		for (int i = 0; i < ASCII.length; i++) {
+			if (Character.isWhitespace(i)) {
+				ASCII[i] = new WhitespaceToken(i);
+			}
+		}
+		for (int length = 1; length <= CACHED_RUN_LENGTH; length++) {
+			SPACES[length] = new WhitespaceToken(" ".repeat(length));
+			TABS[length] = new WhitespaceToken("\t".repeat(length));
+		}
+	}
+
 	String raw;
 
 	public WhitespaceToken(int codepoint) {
-		this.codepoint = codepoint;
-		this.raw = new String(new int[]{codepoint}, 0, 1);
+		this(CodepointStrings.of(codepoint));
+	}
+
+	public WhitespaceToken(String raw) {
+		this.raw = raw;
+	}
+
+	public static WhitespaceToken of(int codepoint) {
+		if (codepoint >= 0 && codepoint < ASCII.length && ASCII[codepoint] != null) {
+			return ASCII[codepoint];
+		}
+		return new WhitespaceToken(codepoint);
+	}
+
+	/**
+	 * @return a token for a run of {@code length} times the same whitespace character
+	 */
+	public static WhitespaceToken ofRun(int codepoint, int length) {
+		if (length == 1) {
+			return of(codepoint);
+		} else if (length <= CACHED_RUN_LENGTH) {
+			if (codepoint == ' ') {
+				return SPACES[length];
+			} else if (codepoint == '\t') {
+				return TABS[length];
+			}
+		}
+		return new WhitespaceToken(CodepointStrings.of(codepoint).repeat(length));
+	}
+
+	public static WhitespaceToken of(CharSequence run) {
+		int length = run.length();
+		char first = run.charAt(0);
+		for (int i = 1; i < length; i++) {
+			if (run.charAt(i) != first) {
+				return new WhitespaceToken(run.toString());
+			}
+		}
+		return ofRun(first, length);
+	}
+
+	public char firstChar() {
+		return raw.charAt(0);
+	}
+
+	public char lastChar() {
+		return raw.charAt(raw.length() - 1);
 	}
 }
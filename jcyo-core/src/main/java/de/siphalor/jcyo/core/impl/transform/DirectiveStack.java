@@ -0,0 +1,182 @@
+package de.siphalor.jcyo.core.impl.transform;
+
+import de.siphalor.jcyo.core.impl.CommentStyle;
+import de.siphalor.jcyo.core.impl.JcyoParseException;
+import de.siphalor.jcyo.core.impl.directive.*;
+import de.siphalor.jcyo.core.impl.expression.JcyoExpression;
+import de.siphalor.jcyo.core.impl.expression.JcyoExpressionEvaluationException;
+import de.siphalor.jcyo.core.impl.expression.JcyoExpressionEvaluator;
+import de.siphalor.jcyo.core.impl.token.*;
+import lombok.Data;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * The state of directive application: the open block directives and the indentation of the current line.
+ * <p>
+ * Evaluating a directive may end a disabled region before the directive and start one after it.
+ * The respective tokens must be taken and emitted around the tokens of the directive.
+ */
+class DirectiveStack {
+	private final JcyoExpressionEvaluator expressionEvaluator;
+	private final Deque<StackEntry> stack = new ArrayDeque<>();
+	private final StringBuilder indent = new StringBuilder();
+	private @Nullable Token tokenBeforeDirective;
+	private @Nullable Token tokenAfterDirective;
+
+	DirectiveStack(JcyoExpressionEvaluator expressionEvaluator) {
+		this.expressionEvaluator = expressionEvaluator;
+	}
+
+	@Nullable Token takeTokenBeforeDirective() {
+		Token token = tokenBeforeDirective;
+		tokenBeforeDirective = null;
+		return token;
+	}
+
+	@Nullable Token takeTokenAfterDirective() {
+		Token token = tokenAfterDirective;
+		tokenAfterDirective = null;
+		return token;
+	}
+
+	/**
+	 * Must be called for every token that is passed through outside of directives.
+	 */
+	void trackIndent(Token token) {
+		switch (token) {
+			case LineBreakToken _ -> indent.setLength(0);
+			case RepresentableToken representableToken -> indent.append(representableToken.raw());
+			default -> {}
+		}
+	}
+
+	void evaluateDirective(JcyoDirectiveStartToken startToken, JcyoDirective directive) {
+		switch (directive) {
+			case IfDirective(JcyoExpression condition) -> {
+				try {
+					boolean enabled = isCurrentStackEntryEnabled()
+							&& expressionEvaluator.evaluate(condition).truthy();
+					pushStackEntry(new StackEntry(directive, enabled, startToken.commentStyle()));
+				} catch (JcyoExpressionEvaluationException e) {
+					throw new DirectiveApplicationException("Failed to evaluate if condition", e);
+				}
+			}
+			case ElifDirective(JcyoExpression condition) -> {
+				try {
+					StackEntry oldEntry = popStackEntry();
+					validateEndDirective(startToken, directive, oldEntry);
+
+					boolean enabled = isCurrentStackEntryEnabled()
+							&& !oldEntry.encounteredEnabledBranch()
+							&& expressionEvaluator.evaluate(condition).truthy();
+
+					StackEntry newEntry = new StackEntry(directive, enabled, startToken.commentStyle());
+					newEntry.encounteredEnabledBranch(oldEntry.encounteredEnabledBranch() || enabled);
+
+					pushStackEntry(newEntry);
+				} catch (JcyoExpressionEvaluationException e) {
+					throw new DirectiveApplicationException("Failed to evaluate elif condition", e);
+				}
+			}
+			case ElseDirective _ -> {
+				StackEntry oldEntry = popStackEntry();
+				validateEndDirective(startToken, directive, oldEntry);
+
+				boolean enabled = isCurrentStackEntryEnabled()
+						&& !oldEntry.encounteredEnabledBranch();
+				StackEntry newEntry = new StackEntry(directive, enabled, startToken.commentStyle());
+				newEntry.encounteredEnabledBranch(oldEntry.encounteredEnabledBranch() || enabled);
+
+				pushStackEntry(newEntry);
+			}
+			default -> {
+				if (directive.isBlockEnd()) {
+					StackEntry entry = popStackEntry();
+					validateEndDirective(startToken, directive, entry);
+				}
+				if (directive.isBlockBegin()) {
+					currentStackEntry().ifPresentOrElse(
+							stackEntry -> pushStackEntry(new StackEntry(
+									directive,
+									stackEntry.enabled(),
+									stackEntry.commentStyle()
+							)),
+							() -> pushStackEntry(new StackEntry(directive, false, startToken.commentStyle()))
+					);
+				}
+			}
+		}
+	}
+
+	private boolean isCurrentStackEntryEnabled() {
+		return currentStackEntry().map(StackEntry::enabled).orElse(true);
+	}
+
+	private void pushStackEntry(StackEntry entry) {
+		if (!entry.enabled() && isCurrentStackEntryEnabled()) {
+			tokenAfterDirective = new JcyoDisabledRegionStartToken(
+					entry.commentStyle(),
+					entry.commentStyle() == CommentStyle.LINE ? indent.toString() : ""
+			);
+		}
+		stack.push(entry);
+	}
+
+	private StackEntry popStackEntry() {
+		StackEntry innerEntry = stack.pop();
+		if (!innerEntry.enabled() && isCurrentStackEntryEnabled()) {
+			tokenBeforeDirective = new JcyoDisabledRegionEndToken();
+		}
+		return innerEntry;
+	}
+
+	private void validateEndDirective(
+			JcyoDirectiveStartToken startToken,
+			JcyoDirective directive,
+			StackEntry entry
+	) {
+		if (!directive.ends(entry.startDirective())) {
+			throw new JcyoParseException(
+					"Incorrect end directive for "
+							+ entry.startDirective()
+							+ ": "
+							+ directive
+			);
+		}
+		if (entry.commentStyle() != startToken.commentStyle()) {
+			throw new JcyoParseException(
+					"You must not mix comment styles for start and end of block directives"
+			);
+		}
+	}
+
+	private Optional<StackEntry> currentStackEntry() {
+		return Optional.ofNullable(stack.peek());
+	}
+
+	@Data
+	private static final class StackEntry {
+		private final JcyoDirective startDirective;
+		private final boolean enabled;
+		private final CommentStyle commentStyle;
+		private boolean encounteredEnabledBranch;
+
+		public StackEntry(JcyoDirective startDirective, boolean enabled, CommentStyle commentStyle) {
+
+			this.startDirective = startDirective;
+			this.enabled = enabled;
+			this.commentStyle = commentStyle;
+			this.encounteredEnabledBranch = enabled;
+		}
+	}
+
+	private static class DirectiveApplicationException extends RuntimeException {
+		public DirectiveApplicationException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
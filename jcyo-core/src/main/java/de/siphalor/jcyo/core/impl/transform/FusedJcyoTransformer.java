@@ -0,0 +1,180 @@
+package de.siphalor.jcyo.core.impl.transform;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.JcyoHelper;
+import de.siphalor.jcyo.core.impl.directive.DirectiveParser;
+import de.siphalor.jcyo.core.impl.directive.GeneratedDirective;
+import de.siphalor.jcyo.core.impl.directive.JcyoDirective;
+import de.siphalor.jcyo.core.impl.expression.JcyoExpressionEvaluator;
+import de.siphalor.jcyo.core.impl.stream.LookaheadTokenStream;
+import de.siphalor.jcyo.core.impl.stream.PeekableTokenStream;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Unpads the lexer tokens, removes generated and disabled code and applies the directives in a single pass.
+ * <p>
+ * The output is the same as the one of the {@link JcyoUnpadder}, the {@link GeneratedAndDisabledTokenRemover}
+ * and {@link JcyoDirectiveApplier#apply} stacked on top of each other.
+ * However, all steps share one lookahead buffer of unpadded tokens and each directive is only parsed once.
+ */
+public class FusedJcyoTransformer implements TokenStream {
+	private final PeekableTokenStream input;
+	private final LookaheadTokenStream unpadded;
+	private final JcyoHelper jcyoHelper;
+	private final DirectiveStack directiveStack;
+	/**
+	 * The number of tokens of the last evaluated directive that still have to be passed through.
+	 */
+	private int directiveTokens;
+
+	private boolean inDisabledFlexComment = false;
+	/**
+	 * The rest of a whitespace run whose first space has been removed as padding.
+	 */
+	private @Nullable WhitespaceToken remainingWhitespace;
+	private boolean inDisabledSection = false;
+
+	FusedJcyoTransformer(TokenStream input, JcyoOptions options, JcyoExpressionEvaluator expressionEvaluator) {
+		this.input = PeekableTokenStream.batching(input);
+		this.unpadded = new LookaheadTokenStream(this::unpad);
+		this.jcyoHelper = new JcyoHelper(options);
+		this.directiveStack = new DirectiveStack(expressionEvaluator);
+	}
+
+	@Override
+	public Token nextToken() {
+		while (true) {
+			if (directiveTokens > 0) {
+				directiveTokens--;
+				return unpadded.nextToken();
+			}
+			Token token = step();
+			if (token != null) {
+				return token;
+			}
+		}
+	}
+
+	/**
+	 * Fills the batch in a loop of its own.
+	 * The tokens of evaluated directives are copied from the lookahead buffer in bulk.
+	 */
+	@Override
+	public int nextTokens(Token[] tokens, int offset, int length) {
+		int count = 0;
+		while (count < length) {
+			if (directiveTokens > 0) {
+				int read = unpadded.nextTokens(tokens, offset + count, Math.min(directiveTokens, length - count));
+				directiveTokens -= read;
+				count += read;
+				if (tokens[offset + count - 1] instanceof EofToken) {
+					return count;
+				}
+				continue;
+			}
+			Token token = step();
+			if (token != null) {
+				tokens[offset + count++] = token;
+				if (token instanceof EofToken) {
+					return count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Consumes the next unpadded token outside of directives that are passed through.
+	 *
+	 * @return the token to emit, or {@code null} if nothing has to be emitted for it
+	 */
+	private @Nullable Token step() {
+		Token tokenAfterDirective = directiveStack.takeTokenAfterDirective();
+		if (tokenAfterDirective != null) {
+			return tokenAfterDirective;
+		}
+
+		switch (unpadded.peekToken()) {
+			case EofToken _ -> {
+				return unpadded.nextToken();
+			}
+			case JcyoDirectiveStartToken startToken -> {
+				unpadded.mark();
+				JcyoDirective directive = new DirectiveParser(unpadded).nextDirective();
+				if (directive instanceof GeneratedDirective generatedDirective) {
+					unpadded.unmark();
+					GeneratedAndDisabledTokenRemover.chompToDirectiveEnd(unpadded, generatedDirective);
+					return null;
+				}
+				directiveTokens = unpadded.reset();
+				directiveStack.evaluateDirective(startToken, directive);
+				return directiveStack.takeTokenBeforeDirective();
+			}
+			case JcyoDisabledStartToken _ -> {
+				unpadded.nextToken();
+				inDisabledSection = true;
+				return null;
+			}
+			case JcyoEndToken _ when inDisabledSection -> {
+				unpadded.nextToken();
+				inDisabledSection = false;
+				return null;
+			}
+			case PlainJavaCommentToken commentToken -> {
+				unpadded.nextToken();
+				Token token = GeneratedAndDisabledTokenRemover.removeDisabledMarkers(commentToken, jcyoHelper);
+				directiveStack.trackIndent(token);
+				return token;
+			}
+			default -> {
+				Token token = unpadded.nextToken();
+				directiveStack.trackIndent(token);
+				return token;
+			}
+		}
+	}
+
+	/**
+	 * Does the same as {@link JcyoUnpadder#nextToken()}.
+	 */
+	private Token unpad() {
+		Token token;
+		if (remainingWhitespace != null) {
+			token = remainingWhitespace;
+			remainingWhitespace = null;
+		} else {
+			token = input.nextToken();
+		}
+		return switch (token) {
+			case JcyoDisabledStartToken disabledStartToken -> {
+				inDisabledFlexComment = true;
+				if (input.peekToken() instanceof WhitespaceToken whitespaceToken
+						&& whitespaceToken.firstChar() == ' ') {
+					input.nextToken();
+					String raw = whitespaceToken.raw();
+					if (raw.length() > 1) {
+						remainingWhitespace = WhitespaceToken.of(raw.substring(1));
+					}
+				}
+				yield disabledStartToken;
+			}
+			case JcyoDirectiveStartToken directiveStartToken -> {
+				inDisabledFlexComment = false;
+				yield directiveStartToken;
+			}
+			case WhitespaceToken whitespaceToken when whitespaceToken.lastChar() == ' ' -> {
+				if (inDisabledFlexComment && input.peekToken() instanceof JcyoEndToken) {
+					String raw = whitespaceToken.raw();
+					if (raw.length() == 1) {
+						yield input.nextToken();
+					}
+					yield WhitespaceToken.of(raw.substring(0, raw.length() - 1));
+				}
+				yield whitespaceToken;
+			}
+			default -> token;
+		};
+	}
+}
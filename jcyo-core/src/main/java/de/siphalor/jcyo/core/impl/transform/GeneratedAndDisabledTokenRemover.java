@@ -6,39 +6,44 @@ import de.siphalor.jcyo.core.impl.JcyoParseException;
 import de.siphalor.jcyo.core.impl.directive.DirectiveParser;
 import de.siphalor.jcyo.core.impl.directive.GeneratedDirective;
 import de.siphalor.jcyo.core.impl.directive.JcyoDirective;
+import de.siphalor.jcyo.core.impl.stream.LookaheadTokenStream;
 import de.siphalor.jcyo.core.impl.stream.PeekableTokenStream;
-import de.siphalor.jcyo.core.impl.stream.TokenBuffer;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
 import de.siphalor.jcyo.core.impl.token.*;
 
 public class GeneratedAndDisabledTokenRemover implements TokenStream {
-	private final PeekableTokenStream inner;
+	private final LookaheadTokenStream inner;
 	private final JcyoHelper jcyoHelper;
-	private final TokenBuffer buffer = new TokenBuffer();
 	private boolean inDisabledSection = false;
+	/**
+	 * The number of tokens of the last parsed directive that still have to be passed through.
+	 */
+	private int directiveTokens;
 
 	public GeneratedAndDisabledTokenRemover(TokenStream inner, JcyoOptions options) {
-		this.inner = PeekableTokenStream.from(inner);
+		this.inner = new LookaheadTokenStream(inner);
 		this.jcyoHelper = new JcyoHelper(options);
 	}
 
 	@Override
 	public Token nextToken() {
 		while (true) {
-			if (!buffer.isEmpty()) {
-				return buffer.nextToken();
+			if (directiveTokens > 0) {
+				directiveTokens--;
+				return inner.nextToken();
 			}
 
 			Token token = inner.peekToken();
 			switch (token) {
 				case JcyoDirectiveStartToken _ -> {
-					DirectiveParser parser = new DirectiveParser(PeekableTokenStream.from(buffer.copying(inner)));
-					JcyoDirective directive = parser.nextDirective();
-					if (!(directive instanceof GeneratedDirective generatedDirective)) {
-						continue;
+					inner.mark();
+					JcyoDirective directive = new DirectiveParser(inner).nextDirective();
+					if (directive instanceof GeneratedDirective generatedDirective) {
+						inner.unmark();
+						chompToDirectiveEnd(inner, generatedDirective);
+					} else {
+						directiveTokens = inner.reset();
 					}
-					chompToDirectiveEnd(generatedDirective);
-					buffer.clear();
 				}
 				case JcyoDisabledStartToken _ -> {
 					inner.nextToken();
@@ -50,7 +55,7 @@ public class GeneratedAndDisabledTokenRemover implements TokenStream {
 				}
 				case PlainJavaCommentToken commentToken -> {
 					inner.nextToken();
-					return processPlainJavaComment(commentToken);
+					return removeDisabledMarkers(commentToken, jcyoHelper);
 				}
 				default -> {
 					return inner.nextToken();
@@ -59,7 +64,10 @@ public class GeneratedAndDisabledTokenRemover implements TokenStream {
 		}
 	}
 
-	private void chompToDirectiveEnd(GeneratedDirective startDirective) {
+	/**
+	 * Skips the generated code up to and including the end directive.
+	 */
+	static void chompToDirectiveEnd(PeekableTokenStream inner, GeneratedDirective startDirective) {
 		while (true) {
 			Token token = inner.peekToken();
 			if (token instanceof EofToken) {
@@ -76,7 +84,10 @@ public class GeneratedAndDisabledTokenRemover implements TokenStream {
 		}
 	}
 
-	private PlainJavaCommentToken processPlainJavaComment(PlainJavaCommentToken token) {
+	/**
+	 * Removes the disabled code markers of line comments that were disabled inside flex comments.
+	 */
+	static PlainJavaCommentToken removeDisabledMarkers(PlainJavaCommentToken token, JcyoHelper jcyoHelper) {
 		String disabledTokenForLineNoWhitespace = jcyoHelper.disabledForLineNoWhitespace();
 		String rawComment = token.raw();
 		int disabledTokenMatch = rawComment.indexOf(disabledTokenForLineNoWhitespace);
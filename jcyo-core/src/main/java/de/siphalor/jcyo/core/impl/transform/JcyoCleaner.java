@@ -1,16 +1,19 @@
 package de.siphalor.jcyo.core.impl.transform;
 
 import de.siphalor.jcyo.core.impl.CommentStyle;
+import de.siphalor.jcyo.core.impl.stream.PeekableTokenStream;
 import de.siphalor.jcyo.core.impl.stream.TokenBuffer;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
 import de.siphalor.jcyo.core.impl.token.*;
-import lombok.RequiredArgsConstructor;
 
-@RequiredArgsConstructor
 public class JcyoCleaner implements TokenStream {
 	private final TokenStream inner;
 	private final TokenBuffer whitespaceBuffer = new TokenBuffer();
 
+	public JcyoCleaner(TokenStream inner) {
+		this.inner = PeekableTokenStream.batching(inner);
+	}
+
 	@Override
 	public Token nextToken() {
 		if (!whitespaceBuffer.isEmpty()) {
@@ -3,25 +3,40 @@ package de.siphalor.jcyo.core.impl.transform;
 import de.siphalor.jcyo.core.impl.stream.PeekableTokenStream;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
 import de.siphalor.jcyo.core.impl.token.*;
+import org.jspecify.annotations.Nullable;
 
 public class JcyoUnpadder implements TokenStream {
 	private final PeekableTokenStream inner;
 
 	private boolean inDisabledFlexComment = false;
+	/**
+	 * The rest of a whitespace run whose first space has been removed as padding.
+	 */
+	private @Nullable WhitespaceToken remainingWhitespace;
 
 	public JcyoUnpadder(TokenStream inner) {
-		this.inner = PeekableTokenStream.from(inner);
+		this.inner = PeekableTokenStream.batching(inner);
 	}
 
 	@Override
 	public Token nextToken() {
-		Token token = inner.nextToken();
+		Token token;
+		if (remainingWhitespace != null) {
+			token = remainingWhitespace;
+			remainingWhitespace = null;
+		} else {
+			token = inner.nextToken();
+		}
 		return switch (token) {
 			case JcyoDisabledStartToken disabledStartToken -> {
 				inDisabledFlexComment = true;
 				if (inner.peekToken() instanceof WhitespaceToken whitespaceToken
-						&& whitespaceToken.codepoint() == ' ') {
+						&& whitespaceToken.firstChar() == ' ') {
 					inner.nextToken();
+					String raw = whitespaceToken.raw();
+					if (raw.length() > 1) {
+						remainingWhitespace = WhitespaceToken.of(raw.substring(1));
+					}
 				}
 				yield  disabledStartToken;
 			}
@@ -29,9 +44,13 @@ public class JcyoUnpadder implements TokenStream {
 				inDisabledFlexComment = false;
 				yield  directiveStartToken;
 			}
-			case WhitespaceToken whitespaceToken when whitespaceToken.codepoint() == ' ' -> {
+			case WhitespaceToken whitespaceToken when whitespaceToken.lastChar() == ' ' -> {
 				if (inDisabledFlexComment && inner.peekToken() instanceof JcyoEndToken) {
-					yield inner.nextToken();
+					String raw = whitespaceToken.raw();
+					if (raw.length() == 1) {
+						yield inner.nextToken();
+					}
+					yield WhitespaceToken.of(raw.substring(0, raw.length() - 1));
 				}
 				yield whitespaceToken;
 			}
@@ -6,38 +6,94 @@ import de.siphalor.jcyo.core.impl.stream.TokenBuffer;
 import de.siphalor.jcyo.core.impl.stream.TokenStream;
 import de.siphalor.jcyo.core.impl.token.*;
 import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Objects;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * Disables the imports that are not used anymore after the directives have been applied.
+ * <p>
+ * Detection takes two passes over two identical token streams of the same file.
+ * {@link #collectUsedImports(TokenStream)} learns the simple names of the imports from the header
+ * and then scans the body only for these names, stopping as soon as all of them have been found.
+ * {@link #apply(TokenStream, Set)} then disables the unused imports while passing the tokens through.
+ */
 @RequiredArgsConstructor
 public class UnusedImportDisabler {
+	private static final String WILDCARD = "*";
+
+	/**
+	 * Single pass variant for streams that can't be read twice.
+	 * The whole stream has to be buffered before the first token can be emitted.
+	 */
 	public TokenStream apply(TokenStream tokenStream) {
 		TokenBuffer copy = new TokenBuffer();
-		Set<String> usedIdentifiers = collectUsedIdentifiers(copy.copying(tokenStream));
-		return disableUnusedImports(copy, usedIdentifiers);
+		TokenStream copyingStream = copy.copying(tokenStream);
+		Set<String> usedImports = collectUsedImports(copyingStream);
+		while (!(copyingStream.nextToken() instanceof EofToken)) {
+			// Buffer the rest that hasn't been needed to determine the used imports
+		}
+		return apply(copy, usedImports);
+	}
+
+	/**
+	 * Disables the imports whose simple names are not in the given set.
+	 * Wildcard imports are always kept.
+	 */
+	public TokenStream apply(TokenStream tokenStream, Set<String> usedImports) {
+		return disableUnusedImports(tokenStream, usedImports);
 	}
 
-	private Set<String> collectUsedIdentifiers(TokenStream tokenStream) {
-		tokenStream = new JcyoCleaner(tokenStream);
-		Set<String> identifiers = new HashSet<>();
+	/**
+	 * Determines which of the imported simple names are used outside of import and package statements.
+	 * <p>
+	 * Only the identifiers in front of the first {@code {}} outside of parentheses are retained,
+	 * since e.g. package annotations may precede the imports that they use.
+	 * The stream is not read any further once all imports have been found to be used.
+	 */
+	public Set<String> collectUsedImports(TokenStream tokenStream) {
+		tokenStream = new VerbatimChunkExpander(new JcyoCleaner(tokenStream));
+		Set<String> importNames = new HashSet<>();
+		List<String> headerIdentifiers = new ArrayList<>();
+		int parenthesesDepth = 0;
 		boolean afterDot = false;
 		while (true) {
 			switch (tokenStream.nextToken()) {
 				case EofToken _ -> {
-					return identifiers;
+					return usedImportsInHeader(importNames, headerIdentifiers);
 				}
-				case JavaKeywordToken keywordToken -> {
-					if (keywordToken.keyword() == JavaKeyword.PACKAGE || keywordToken.keyword() == JavaKeyword.IMPORT) {
-						chompToSemicolon(tokenStream);
+				case JavaKeywordToken(JavaKeyword keyword) when keyword == JavaKeyword.IMPORT -> {
+					String name = readImportedName(tokenStream);
+					if (name != null && !name.equals(WILDCARD)) {
+						importNames.add(name);
 					}
 					afterDot = false;
 				}
-				case OperatorToken operatorToken -> afterDot = operatorToken.codepoint() == '.';
-				case IdentifierToken identifierToken -> {
+				case JavaKeywordToken(JavaKeyword keyword) when keyword == JavaKeyword.PACKAGE -> {
+					readImportedName(tokenStream);
+					afterDot = false;
+				}
+				case OperatorToken(int codepoint) when codepoint == '{' && parenthesesDepth == 0 -> {
+					return collectUsedImportsInBody(
+							tokenStream,
+							importNames,
+							usedImportsInHeader(importNames, headerIdentifiers)
+					);
+				}
+				case OperatorToken(int codepoint) -> {
+					if (codepoint == '(') {
+						parenthesesDepth++;
+					} else if (codepoint == ')') {
+						parenthesesDepth--;
+					}
+					afterDot = codepoint == '.';
+				}
+				case IdentifierToken(String identifier) -> {
 					if (!afterDot) {
-						identifiers.add(identifierToken.identifier());
+						headerIdentifiers.add(identifier);
 					}
 				}
 				default -> afterDot = false;
@@ -45,19 +101,61 @@ public class UnusedImportDisabler {
 		}
 	}
 
-	private void chompToSemicolon(TokenStream tokenStream) {
+	private Set<String> usedImportsInHeader(Set<String> importNames, List<String> headerIdentifiers) {
+		Set<String> usedImports = new HashSet<>();
+		for (String identifier : headerIdentifiers) {
+			if (importNames.contains(identifier)) {
+				usedImports.add(identifier);
+			}
+		}
+		return usedImports;
+	}
+
+	private Set<String> collectUsedImportsInBody(
+			TokenStream tokenStream,
+			Set<String> importNames,
+			Set<String> usedImports
+	) {
+		boolean afterDot = false;
+		while (usedImports.size() < importNames.size()) {
+			switch (tokenStream.nextToken()) {
+				case EofToken _ -> {
+					return usedImports;
+				}
+				case OperatorToken(int codepoint) -> afterDot = codepoint == '.';
+				case IdentifierToken(String identifier) -> {
+					if (!afterDot && importNames.contains(identifier)) {
+						usedImports.add(identifier);
+					}
+				}
+				default -> afterDot = false;
+			}
+		}
+		return usedImports;
+	}
+
+	/**
+	 * Reads the rest of an import or package statement.
+	 * @return the last name of the statement, which may also be {@value WILDCARD}
+	 */
+	private static @Nullable String readImportedName(TokenStream tokenStream) {
+		String name = null;
 		while (true) {
-			Token token = tokenStream.nextToken();
-			if (token instanceof EofToken) {
-				return;
-			} else if (token instanceof OperatorToken(int codepoint) && codepoint == ';') {
-				return;
+			switch (tokenStream.nextToken()) {
+				case IdentifierToken(String identifier) -> name = identifier;
+				case JavaKeywordToken(JavaKeyword keyword) -> name = keyword.name();
+				case OperatorToken(int codepoint) when codepoint == '*' -> name = WILDCARD;
+				case OperatorToken(int codepoint) when codepoint == '.' -> {}
+				case OperatorToken _, EofToken _ -> {
+					return name;
+				}
+				default -> {}
 			}
 		}
 	}
 
-	private TokenStream disableUnusedImports(TokenStream source, Set<String> usedIdentifiers) {
-		var peekableSource = PeekableTokenStream.from(source);
+	private TokenStream disableUnusedImports(TokenStream source, Set<String> usedImports) {
+		var peekableSource = PeekableTokenStream.batching(source);
 		return new TokenStream() {
 			private final TokenBuffer buffer = new TokenBuffer();
 			private boolean inDisabledRegion;
@@ -103,23 +201,8 @@ public class UnusedImportDisabler {
 			}
 
 			private boolean parseImportAndDetermineIfUsed() {
-				return buffer.copying(peekableSource).stream()
-						.takeWhile(t ->
-								!(t instanceof OperatorToken(int codepoint))
-										|| codepoint == '.'
-										|| codepoint == '*'
-						)
-						.map(t -> switch (t) {
-							case IdentifierToken(String identifier) -> identifier;
-							case JavaKeywordToken(JavaKeyword kw) -> kw.name();
-							case OperatorToken(int codepoint) when codepoint == '*' ->
-									Character.toString((char) codepoint);
-							default -> null;
-						})
-						.filter(Objects::nonNull)
-						.reduce((_, second) -> second)
-						.map(t -> t.equals("*") || usedIdentifiers.contains(t))
-						.orElse(false);
+				String name = readImportedName(buffer.copying(peekableSource));
+				return name != null && (name.equals(WILDCARD) || usedImports.contains(name));
 			}
 		};
 	}
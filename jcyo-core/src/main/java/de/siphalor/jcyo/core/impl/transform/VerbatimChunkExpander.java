@@ -0,0 +1,47 @@
+package de.siphalor.jcyo.core.impl.transform;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.JcyoArrayLexer;
+import de.siphalor.jcyo.core.impl.stream.PeekableTokenStream;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import de.siphalor.jcyo.core.impl.token.VerbatimChunkToken;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Replaces {@link VerbatimChunkToken}s with the individual tokens they consist of.
+ * The chunks are only lexed again when they are reached.
+ */
+public class VerbatimChunkExpander implements TokenStream {
+	/**
+	 * Chunks never contain comments, so the prefixes of the options don't matter.
+	 */
+	private static final JcyoOptions CHUNK_OPTIONS = JcyoOptions.builder().build();
+
+	private final TokenStream inner;
+	private @Nullable TokenStream chunkTokens;
+
+	public VerbatimChunkExpander(TokenStream inner) {
+		this.inner = PeekableTokenStream.batching(inner);
+	}
+
+	@Override
+	public Token nextToken() {
+		while (true) {
+			if (chunkTokens != null) {
+				Token token = chunkTokens.nextToken();
+				if (!(token instanceof EofToken)) {
+					return token;
+				}
+				chunkTokens = null;
+			}
+			Token token = inner.nextToken();
+			if (!(token instanceof VerbatimChunkToken chunkToken)) {
+				return token;
+			}
+			char[] chars = chunkToken.raw().toCharArray();
+			chunkTokens = new JcyoArrayLexer(chars, 0, chars.length, CHUNK_OPTIONS);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package de.siphalor.jcyo.core.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundaryScannerTest {
+	@Test
+	void preferredMatchesScalar() {
+		BoundaryScanner scalar = BoundaryScanner.scalar();
+		BoundaryScanner preferred = BoundaryScanner.preferred();
+		Random random = new Random(42);
+
+		for (int length = 0; length < 300; length++) {
+			char[] chars = new char[length];
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				// Mostly letters, with the occasional boundary character
+				chars[i] = random.nextInt(40) == 0 ? '*' : (char) ('a' + random.nextInt(26));
+				bytes[i] = (byte) chars[i];
+			}
+			MemorySegment segment = MemorySegment.ofArray(bytes);
+
+			for (int from = 0; from <= length; from += 7) {
+				assertThat(preferred.indexOfAny(chars, from, length, '*', '/'))
+						.isEqualTo(scalar.indexOfAny(chars, from, length, '*', '/'));
+				assertThat(preferred.indexOfAny(segment, from, length, (byte) '*', (byte) '/'))
+						.isEqualTo(scalar.indexOfAny(segment, from, length, (byte) '*', (byte) '/'));
+			}
+		}
+	}
+
+	@Test
+	void notFound() {
+		char[] chars = "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+		assertThat(BoundaryScanner.preferred().indexOfAny(chars, 3, chars.length - 1, '"', '\\'))
+				.isEqualTo(chars.length - 1);
+		assertThat(BoundaryScanner.preferred().indexOfAny(chars, 0, chars.length, 'z', 'z')).isEqualTo(25);
+	}
+}
@@ -0,0 +1,46 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ByteBudgetTest {
+	@Test
+	@SneakyThrows
+	void waitsForReleasedBytes() {
+		var budget = new ByteBudget(100);
+		assertThat(budget.acquire(60)).isEqualTo(60);
+
+		var pending = CompletableFuture.supplyAsync(() -> {
+			try {
+				return budget.acquire(50);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertThatThrownBy(() -> pending.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+		budget.release(60);
+		assertThat(pending.get(5, TimeUnit.SECONDS)).isEqualTo(50);
+		assertThat(budget.reserved()).isEqualTo(50);
+	}
+
+	@Test
+	@SneakyThrows
+	void grantsOversizedReservationsOnTheirOwn() {
+		var budget = new ByteBudget(100);
+
+		assertThat(budget.acquire(1000)).isEqualTo(100);
+		budget.add(500);
+		assertThat(budget.reserved()).isEqualTo(600);
+
+		budget.release(600);
+		assertThat(budget.reserved()).isZero();
+	}
+}
@@ -0,0 +1,77 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteOutputBufferTest {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@SneakyThrows
+	void comparesAgainstFiles() {
+		Path file = tempDir.resolve("Test.java");
+		String content = "a".repeat(100_000) + "b";
+		Files.writeString(file, content);
+		var buffer = new ByteOutputBuffer();
+
+		try (var channel = FileChannel.open(file)) {
+			buffer.write(content.getBytes(StandardCharsets.UTF_8));
+			assertThat(buffer.contentEquals(channel)).isTrue();
+
+			buffer.reset().write((content.substring(0, content.length() - 1) + "c").getBytes(StandardCharsets.UTF_8));
+			assertThat(buffer.contentEquals(channel)).isFalse();
+
+			buffer.reset().write(content.substring(1).getBytes(StandardCharsets.UTF_8));
+			assertThat(buffer.contentEquals(channel)).isFalse();
+		}
+	}
+
+	@Test
+	@SneakyThrows
+	void writesToChannels() {
+		Path file = tempDir.resolve("Test.java");
+		var buffer = new ByteOutputBuffer();
+		buffer.write("äb".getBytes(StandardCharsets.UTF_8));
+		buffer.write('c');
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			buffer.writeTo(channel);
+		}
+
+		assertThat(file).content().isEqualTo("äbc");
+		assertThat(buffer.length()).isEqualTo(4);
+	}
+
+	@Test
+	@SneakyThrows
+	void readsFilesAndFindsMismatches() {
+		Path file = tempDir.resolve("Test.java");
+		String content = "a".repeat(100_000) + "b";
+		Files.writeString(file, content);
+		var buffer = new ByteOutputBuffer();
+		buffer.write("stale".getBytes(StandardCharsets.UTF_8));
+
+		try (var channel = FileChannel.open(file)) {
+			buffer.readFrom(channel);
+		}
+
+		assertThat(buffer.length()).isEqualTo(content.length());
+		assertThat(buffer.segment().byteSize()).isEqualTo(content.length());
+		var other = new ByteOutputBuffer();
+		other.write(content.getBytes(StandardCharsets.UTF_8));
+		assertThat(buffer.mismatch(other)).isEqualTo(-1);
+		other.reset().write("a".repeat(10).getBytes(StandardCharsets.UTF_8));
+		assertThat(buffer.mismatch(other)).isEqualTo(10);
+		assertThat(buffer.byteBuffer(10).remaining()).isEqualTo(content.length() - 10);
+	}
+}
@@ -0,0 +1,25 @@
+package de.siphalor.jcyo.core.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CharClassTableTest {
+	@Test
+	void sameAsCharacter() {
+		for (int c = -1; c < 0x3100; c++) {
+			assertThat(CharClassTable.isJavaIdentifierStart(c)).as("identifier start %x", c)
+					.isEqualTo(Character.isJavaIdentifierStart(c));
+			assertThat(CharClassTable.isJavaIdentifierPart(c)).as("identifier part %x", c)
+					.isEqualTo(Character.isJavaIdentifierPart(c));
+			assertThat(CharClassTable.isWhitespace(c)).as("whitespace %x", c)
+					.isEqualTo(Character.isWhitespace(c));
+			assertThat(CharClassTable.isInlineWhitespace(c)).as("inline whitespace %x", c)
+					.isEqualTo(Character.isWhitespace(c) && c != '\n' && c != '\r');
+			assertThat(CharClassTable.isDigit(c)).as("digit %x", c)
+					.isEqualTo(Character.isDigit(c));
+			assertThat(CharClassTable.isNumericPart(c)).as("numeric part %x", c)
+					.isEqualTo(Character.isDigit(c) || c == '.' || Character.isLetter(c));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirectivePrefilterTest {
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+			"class Test {}|false",
+			"// comment / # /* - */|false",
+			"a / b * c|false",
+			"//# if a|true",
+			"int a; //- int b;|true",
+			"/*# if a */|true",
+			"/*- disabled */|true",
+			"\"/*#\"|true",
+			"//|false",
+			"/*|false",
+	})
+	@SneakyThrows
+	void mayContainMarkers(String input, boolean expected) {
+		byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		var prefilter = new DirectivePrefilter(JcyoOptions.builder().build(), 4);
+		Path file = tempDir.resolve("Test.java");
+		Files.write(file, bytes);
+
+		assertThat(prefilter.mayContainMarkers(MemorySegment.ofArray(bytes))).isEqualTo(expected);
+		assertThat(prefilter.mayContainMarkers(file)).isEqualTo(expected);
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+			"class Test {}|false|false|false|false",
+			"import a.B; class Test {}|false|false|false|true",
+			"//# if a|true|false|false|false",
+			"//# generated|true|true|false|false",
+			"/*#\\tgenerated */|true|true|false|false",
+			"//# if a\\n//- int b;\\n//# end|true|false|true|false",
+			"int a; //- import b;|false|false|true|true",
+	})
+	@SneakyThrows
+	void scanFacts(String input, boolean directives, boolean generated, boolean disabled, boolean imports) {
+		byte[] bytes = input.translateEscapes().getBytes(StandardCharsets.UTF_8);
+		var prefilter = new DirectivePrefilter(JcyoOptions.builder().build());
+		Path file = tempDir.resolve("Test.java");
+		Files.write(file, bytes);
+		FileFacts expected = new FileFacts(directives, generated, disabled, imports);
+
+		assertThat(prefilter.scanFacts(MemorySegment.ofArray(bytes))).isEqualTo(expected);
+		assertThat(prefilter.scanFacts(file)).isEqualTo(expected);
+	}
+
+	@ParameterizedTest
+	@CsvSource({"0", "1", "2", "3", "4", "5", "6"})
+	@SneakyThrows
+	void markerAcrossChunkBorder(int padding) {
+		String input = "x".repeat(padding) + "/*§ end */";
+		var prefilter = new DirectivePrefilter(JcyoOptions.builder().commandPrefix('§').build(), 6);
+		Path file = tempDir.resolve("Test.java");
+		Files.writeString(file, input);
+
+		assertThat(prefilter.mayContainMarkers(file)).isTrue();
+	}
+}
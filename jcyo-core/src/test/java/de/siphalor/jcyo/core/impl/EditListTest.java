@@ -0,0 +1,117 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.SourceSpans;
+import de.siphalor.jcyo.core.impl.stream.TapeTokenStream;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.IdentifierToken;
+import de.siphalor.jcyo.core.impl.token.JcyoDisabledStartToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EditListTest {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@SneakyThrows
+	void recordsKeptSpans() {
+		String source = "int a;\n//- int b;\nint c;\n";
+		EditRecorder recorder = new EditRecorder(MemorySegment.ofArray(source.getBytes(StandardCharsets.UTF_8)));
+
+		recorder.write("int a;\n");
+		recorder.write("int b;\n");
+		recorder.keep(18, 24, "int c;");
+		recorder.write("\n");
+		recorder.close();
+
+		assertThat(recorder.edits().edits()).containsExactly(
+				new EditList.Insert(7, "int b;\n"),
+				new EditList.Delete(7, 18)
+		);
+		assertThat(render(source, recorder.edits())).isEqualTo("int a;\nint b;\nint c;\n");
+	}
+
+	@Test
+	@SneakyThrows
+	void keepsPassedThroughTapeTokens() {
+		String source = "int a;\n".repeat(100) + "\t//- int b;\n" + "int c;\n".repeat(100);
+		MemorySegment segment = MemorySegment.ofArray(source.getBytes(StandardCharsets.UTF_8));
+		JcyoOptions options = JcyoOptions.builder().verbatimChunks(false).build();
+		TokenTape tape = new TokenTape();
+		new JcyoUtf8Lexer(segment, options).lexInto(tape);
+		SourceSpans spans = tape.sourceSpans();
+		TapeTokenStream stream = tape.spannedStream(spans);
+
+		var writer = new EditListTokenWriter(new EditRecorder(segment), spans, options);
+		try (writer) {
+			while (!(stream.peekToken() instanceof EofToken)) {
+				Token token = stream.nextToken();
+				if (token instanceof JcyoDisabledStartToken) {
+					// Drops the marker and its padding, like the unpadding does
+					stream.skip();
+				} else if (token instanceof IdentifierToken(String identifier) && identifier.equals("b")) {
+					writer.write(new IdentifierToken("x"));
+				} else {
+					writer.write(token);
+				}
+			}
+		}
+
+		assertThat(writer.edits().edits()).containsExactly(
+				new EditList.Delete(701, 705),
+				new EditList.Insert(709, "x"),
+				new EditList.Delete(709, 710)
+		);
+		assertThat(render(source, writer.edits()))
+				.isEqualTo("int a;\n".repeat(100) + "\tint x;\n" + "int c;\n".repeat(100));
+	}
+
+	@Test
+	@SneakyThrows
+	void unchangedSourceHasNoEdits() {
+		String source = "class Täst { /* ö */ }\n";
+		EditRecorder recorder = new EditRecorder(MemorySegment.ofArray(source.getBytes(StandardCharsets.UTF_8)));
+
+		recorder.write(source);
+		recorder.close();
+
+		assertThat(recorder.edits().isEmpty()).isTrue();
+	}
+
+	@Test
+	@SneakyThrows
+	void rendersNonAsciiInsertions() {
+		String source = "ä //- ö 😀\nend";
+		EditRecorder recorder = new EditRecorder(MemorySegment.ofArray(source.getBytes(StandardCharsets.UTF_8)));
+
+		recorder.write("ä ö 😀\n");
+		recorder.close();
+
+		assertThat(render(source, recorder.edits())).isEqualTo("ä ö 😀\n");
+	}
+
+	@SneakyThrows
+	private String render(String source, EditList edits) {
+		Path file = tempDir.resolve("Source.java");
+		Files.writeString(file, source);
+		var output = new ByteArrayOutputStream();
+		try (var channel = FileChannel.open(file)) {
+			edits.render(channel, channel.size(), Channels.newChannel(output));
+		}
+		return output.toString(StandardCharsets.UTF_8);
+	}
+}
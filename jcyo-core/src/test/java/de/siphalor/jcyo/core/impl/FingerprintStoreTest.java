@@ -0,0 +1,52 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoChangeDetection;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FingerprintStoreTest {
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@EnumSource(value = JcyoChangeDetection.class, names = {"MODIFICATION_TIME_AND_SIZE", "CRC32C"})
+	@SneakyThrows
+	void changesDuringProcessingAreNotRecorded(JcyoChangeDetection changeDetection) {
+		Path file = tempDir.resolve("Test.java");
+		Files.writeString(file, "class A {}");
+		Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+		var store = new FingerprintStore(changeDetection, "");
+
+		var fingerprint = store.capture(file);
+		// Saved by the user while the file is processed
+		Files.writeString(file, "class B {}");
+		store.record("Test.java", fingerprint, 0);
+
+		assertThat(store.isUnchanged("Test.java", store.capture(file))).isFalse();
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = JcyoChangeDetection.class, names = {"MODIFICATION_TIME_AND_SIZE", "CRC32C"})
+	@SneakyThrows
+	void recordsWrittenContent(JcyoChangeDetection changeDetection) {
+		Path file = tempDir.resolve("Test.java");
+		var content = new ByteOutputBuffer();
+		content.write("class A {}".getBytes());
+		Files.write(file, "class A {}".getBytes());
+		var store = new FingerprintStore(changeDetection, "");
+
+		store.record("Test.java", store.captureWritten(file, content::checksum), 0);
+
+		assertThat(store.isUnchanged("Test.java", store.capture(file))).isTrue();
+		assertThat(store.isUnchanged("Test.java", null)).isFalse();
+	}
+}
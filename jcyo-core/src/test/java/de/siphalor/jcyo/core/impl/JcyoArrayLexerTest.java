@@ -0,0 +1,43 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JcyoArrayLexerTest {
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"""
+					package test.abc;
+					//- import static hi;
+					
+					//# if false
+					1E100+"test".5f
+					//# end:if
+					""",
+			"/*-test/* blub *//*- /*#if false *//*#end*/",
+			"/*- a /*- b */ c /*- d */",
+			"/*- a /*- /",
+			"String s = \"\"\"\r\n\ttext \\\"\"\" block\"\"\";\r\nchar c = '\\'';",
+			"\"\";x = \"unterminated",
+			"/** javadoc **/ still comment */ a * b / c /**/",
+			"\täß = 😀 +  x;\n\r//// comment",
+	})
+	void sameAsStreamingLexer(String source) {
+		JcyoOptions options = JcyoOptions.builder().build();
+		List<Token> expected = new JcyoLexer(new StringReader(source), options).stream().toList();
+
+		char[] chars = ("##" + source + "##").toCharArray();
+		var lexer = new JcyoArrayLexer(chars, 2, chars.length - 2, options);
+
+		assertThat(lexer.stream().toList()).isEqualTo(expected);
+		assertThat(lexer.nextToken()).isSameAs(EofToken.instance());
+	}
+}
@@ -92,4 +92,24 @@ class JcyoLexerTest {
 				new JcyoEndToken("*/") // directive end
 		));
 	}
+
+	@Test
+	void testWhitespaceRuns() {
+		JcyoLexer lexer = new JcyoLexer(
+				new StringReader("\t\t\treturn  a\t \u3000;\n    \r\n"),
+				JcyoOptions.builder().build()
+		);
+
+		assertThat(lexer.stream().toList()).isEqualTo(List.of(
+				new WhitespaceToken("\t\t\t"),
+				new JavaKeywordToken(JavaKeyword.RETURN),
+				new WhitespaceToken("  "),
+				new IdentifierToken("a"),
+				new WhitespaceToken("\t \u3000"),
+				new OperatorToken(';'),
+				new LineBreakToken("\n"),
+				new WhitespaceToken("    "),
+				new LineBreakToken("\r\n")
+		));
+	}
 }
@@ -1,15 +1,26 @@
 package de.siphalor.jcyo.core.impl;
 
+import de.siphalor.jcyo.core.api.Jcyo;
+import de.siphalor.jcyo.core.api.JcyoChangeDetection;
+import de.siphalor.jcyo.core.api.JcyoLexerMode;
 import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.api.JcyoPipelineStage;
+import de.siphalor.jcyo.core.api.JcyoStatistics;
+import de.siphalor.jcyo.core.api.JcyoUpdateStrategy;
 import de.siphalor.jcyo.core.api.JcyoVariables;
 import de.siphalor.jcyo.core.api.value.JcyoString;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -49,15 +60,124 @@ class JcyoProcessorTest {
 		assertThat(input).isFile().content().isEqualTo(content);
 	}
 
-	@Test
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
 	@SneakyThrows
-	void processSimple() {
+	void processDirectiveFreePassThrough(JcyoLexerMode lexerMode) {
+		String content = """
+				package de.siphalor.jcyo.test;
+
+				class Test {
+					// not a directive: / / # or /* - */
+					String s = "/ *#";
+				}
+				""";
+		File input = inputDir.resolve("Test.java").toFile();
+		createInputFile(input, content);
+
+		var processor = new JcyoProcessor(
+				new JcyoVariables(),
+				JcyoOptions.builder().updateInput(true).lexerMode(lexerMode).build(),
+				inputDir,
+				cleanOutputDir
+		);
+
+		processor.process(input.toPath());
+
+		assertThat(input).isFile().content().isEqualTo(content);
+		assertThat(cleanOutputDir.resolve("Test.java")).isRegularFile().content().isEqualTo(content);
+		assertThat(processor.statistics().processedFiles()).isEqualTo(1);
+		assertThat(processor.statistics().directiveFreeFiles()).isEqualTo(1);
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processDirectiveFreeUnusedImports(JcyoLexerMode lexerMode) {
+		File input = inputDir.resolve("Test.java").toFile();
+		createInputFile(input, """
+				package de.siphalor.jcyo.test;
+
+				import java.util.List;
+				import java.util.Map;
+
+				class Test {
+					Map<String, String> map;
+				}
+				""");
+
+		var processor = new JcyoProcessor(
+				new JcyoVariables(),
+				JcyoOptions.builder().updateInput(true).lexerMode(lexerMode).build(),
+				inputDir,
+				cleanOutputDir
+		);
+
+		processor.process(input.toPath());
+
+		assertThat(input).isFile().content().isEqualTo("""
+				package de.siphalor.jcyo.test;
+
+				//- import java.util.List;
+				import java.util.Map;
+
+				class Test {
+					Map<String, String> map;
+				}
+				""");
+		assertThat(cleanOutputDir.resolve("Test.java")).isRegularFile().content().isEqualTo("""
+				package de.siphalor.jcyo.test;
+
+				import java.util.Map;
+
+				class Test {
+					Map<String, String> map;
+				}
+				""");
+		assertThat(processor.statistics().directiveFreeFiles()).isEqualTo(0);
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {true, false})
+	@SneakyThrows
+	void processMappedKeepsSourceBytes(boolean editListRendering) {
+		// The raw bytes of a truncated UTF-8 sequence, which decoding and encoding again would alter
+		Path input = inputDir.resolve("Test.java");
+		Files.write(input, "class Test {\n\t// \u00e2\u0082\n\t//# if true\n\t//- int a;\n\t//# end\n}\n"
+				.getBytes(StandardCharsets.ISO_8859_1));
+
+		var processor = new JcyoProcessor(
+				new JcyoVariables(),
+				JcyoOptions.builder()
+						.updateInput(true)
+						.lexerMode(JcyoLexerMode.MAPPED_UTF8)
+						.editListRendering(editListRendering)
+						.build(),
+				inputDir,
+				cleanOutputDir
+		);
+
+		processor.process(input);
+
+		assertThat(Files.readAllBytes(input)).isEqualTo(
+				"class Test {\n\t// \u00e2\u0082\n\t//# if true\n\tint a;\n\t//# end\n}\n"
+						.getBytes(StandardCharsets.ISO_8859_1)
+		);
+		assertThat(Files.readAllBytes(cleanOutputDir.resolve("Test.java"))).isEqualTo(
+				"class Test {\n\t// \u00e2\u0082\n\tint a;\n}\n".getBytes(StandardCharsets.ISO_8859_1)
+		);
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processSimple(JcyoLexerMode lexerMode) {
 		JcyoVariables variables = new JcyoVariables();
 		variables.set("Test", new JcyoString("blub"));
 		variables.set("int_type", new JcyoString("long"));
 		JcyoProcessor processor = new JcyoProcessor(
 				variables,
-				JcyoOptions.builder().updateInput(true).build(),
+				JcyoOptions.builder().updateInput(true).lexerMode(lexerMode).build(),
 				inputDir,
 				cleanOutputDir
 		);
@@ -113,12 +233,13 @@ class JcyoProcessorTest {
 				""");
 	}
 
-	@Test
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
 	@SneakyThrows
-	void processComments() {
+	void processComments(JcyoLexerMode lexerMode) {
 		JcyoProcessor processor = new JcyoProcessor(
 				new JcyoVariables(),
-				JcyoOptions.builder().updateInput(true).build(),
+				JcyoOptions.builder().updateInput(true).lexerMode(lexerMode).build(),
 				inputDir,
 				cleanOutputDir
 		);
@@ -192,6 +313,393 @@ class JcyoProcessorTest {
 				""");
 	}
 
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processVerbatimChunks(JcyoLexerMode lexerMode) {
+		String content = """
+				package de.siphalor.jcyo.test;
+
+				import de.siphalor.jcyo.test.something.Used;
+				import de.siphalor.jcyo.test.something.Unused;
+
+				class Test {
+					void test() {
+						//# if false
+						Used.test(1 + 2);
+						//# end
+						System.out.println(Used.class + " " + Unused.class.getName());
+					}
+				}
+				""";
+		for (boolean verbatimChunks : new boolean[] {false, true}) {
+			File input = inputDir.resolve("Test.java").toFile();
+			createInputFile(input, content);
+			new JcyoProcessor(
+					new JcyoVariables(),
+					JcyoOptions.builder().lexerMode(lexerMode).verbatimChunks(verbatimChunks).build(),
+					inputDir,
+					cleanOutputDir
+			).process(input.toPath());
+
+			assertThat(input).content().isEqualTo(content);
+			assertThat(cleanOutputDir.resolve("Test.java")).content().isEqualTo("""
+					package de.siphalor.jcyo.test;
+
+					import de.siphalor.jcyo.test.something.Used;
+					import de.siphalor.jcyo.test.something.Unused;
+
+					class Test {
+						void test() {
+							System.out.println(Used.class + " " + Unused.class.getName());
+						}
+					}
+					""");
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processWithElidedStages(JcyoLexerMode lexerMode) {
+		String content = """
+				package de.siphalor.jcyo.test;
+
+				class Test {
+					void test() {
+						//# if false
+						System.out.println("Hello World!");
+						//# end
+					}
+				}
+				""";
+		for (boolean elideStages : new boolean[] {false, true}) {
+			File input = inputDir.resolve("Test.java").toFile();
+			createInputFile(input, content);
+			var processor = new JcyoProcessor(
+					new JcyoVariables(),
+					JcyoOptions.builder()
+							.lexerMode(lexerMode)
+							.fusedTransformation(false)
+							.elideStages(elideStages)
+							.build(),
+					inputDir,
+					cleanOutputDir
+			);
+			processor.process(input.toPath());
+
+			assertThat(input).content().isEqualTo(content);
+			assertThat(cleanOutputDir.resolve("Test.java")).content().isEqualTo("""
+					package de.siphalor.jcyo.test;
+
+					class Test {
+						void test() {
+						}
+					}
+					""");
+
+			JcyoStatistics statistics = processor.statistics();
+			long expectedSkips = elideStages ? 1 : 0;
+			assertThat(statistics.skippedStages(JcyoPipelineStage.UNPADDING)).isEqualTo(expectedSkips);
+			assertThat(statistics.skippedStages(JcyoPipelineStage.GENERATED_AND_DISABLED_REMOVAL))
+					.isEqualTo(expectedSkips);
+			assertThat(statistics.skippedStages(JcyoPipelineStage.DIRECTIVE_APPLICATION)).isZero();
+			assertThat(statistics.skippedStages(JcyoPipelineStage.UNUSED_IMPORT_DISABLING)).isEqualTo(expectedSkips);
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processPipelined(JcyoLexerMode lexerMode) {
+		String content = """
+				package de.siphalor.jcyo.test;
+
+				import de.siphalor.jcyo.test.something.Utils;
+				//- import de.siphalor.jcyo.test.something.Helper;
+
+				class Test {
+					void test() {
+						//# if true
+						//- Helper.test();
+						//# else
+						Utils.test();
+						//# end
+					}
+				}
+				""";
+		for (int threshold : new int[] {0, 1}) {
+			File input = inputDir.resolve("Test.java").toFile();
+			createInputFile(input, content);
+			new JcyoProcessor(
+					new JcyoVariables(),
+					JcyoOptions.builder()
+							.updateInput(true)
+							.lexerMode(lexerMode)
+							.pipelinedStagesThreshold(threshold)
+							.build(),
+					inputDir,
+					cleanOutputDir
+			).process(input.toPath());
+
+			assertThat(input).content().isEqualTo("""
+					package de.siphalor.jcyo.test;
+
+					//- import de.siphalor.jcyo.test.something.Utils;
+					import de.siphalor.jcyo.test.something.Helper;
+
+					class Test {
+						void test() {
+							//# if true
+							Helper.test();
+							//# else
+							//- Utils.test();
+							//# end
+						}
+					}
+					""");
+			assertThat(cleanOutputDir.resolve("Test.java")).content().isEqualTo("""
+					package de.siphalor.jcyo.test;
+
+					import de.siphalor.jcyo.test.something.Helper;
+
+					class Test {
+						void test() {
+							Helper.test();
+						}
+					}
+					""");
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoLexerMode.class)
+	@SneakyThrows
+	void processWithUpdateStrategies(JcyoLexerMode lexerMode) {
+		String content = """
+				package de.siphalor.jcyo.test;
+
+				import de.siphalor.jcyo.test.something.Utils;
+				import de.siphalor.jcyo.test.something.Helper;
+
+				class Test {
+					void test() {
+						//# if true
+						//- Helper.test();
+						//# else
+						Utils.test();
+						//# end
+					}
+				}
+				""";
+		for (JcyoUpdateStrategy updateStrategy : JcyoUpdateStrategy.values()) {
+			File input = inputDir.resolve("Test.java").toFile();
+			createInputFile(input, content);
+			var processor = new JcyoProcessor(
+					new JcyoVariables(),
+					JcyoOptions.builder()
+							.updateInput(true)
+							.updateStrategy(updateStrategy)
+							.lexerMode(lexerMode)
+							.build(),
+					inputDir,
+					null
+			);
+
+			String expected = """
+					package de.siphalor.jcyo.test;
+
+					//- import de.siphalor.jcyo.test.something.Utils;
+					import de.siphalor.jcyo.test.something.Helper;
+
+					class Test {
+						void test() {
+							//# if true
+							Helper.test();
+							//# else
+							//- Utils.test();
+							//# end
+						}
+					}
+					""";
+			processor.process(input.toPath());
+			assertThat(input).content().isEqualTo(expected);
+
+			// A second run must leave the already updated file as is
+			processor.process(input.toPath());
+			assertThat(input).content().isEqualTo(expected);
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = JcyoChangeDetection.class, names = {"MODIFICATION_TIME_AND_SIZE", "CRC32C"})
+	@SneakyThrows
+	void processWithChangeDetection(JcyoChangeDetection changeDetection) {
+		Path fingerprintFile = cleanOutputDir.resolve("fingerprints.bin");
+		File input = inputDir.resolve("Test.java").toFile();
+		createInputFile(input, """
+				class Test {
+					//# if true
+					//- int a;
+					//# end
+				}
+				""");
+		var options = JcyoOptions.builder()
+				.updateInput(true)
+				.changeDetection(changeDetection)
+				.fingerprintFile(fingerprintFile)
+				.build();
+
+		var processor = new JcyoProcessor(new JcyoVariables(), options, inputDir, null);
+		processor.process(input.toPath());
+		processor.process(input.toPath());
+		processor.saveFingerprints();
+
+		assertThat(processor.statistics().processedFiles()).isEqualTo(1);
+		assertThat(processor.statistics().unchangedFiles()).isEqualTo(1);
+		assertThat(input).content().contains("\tint a;");
+
+		// A new processor picks up the persisted fingerprints
+		processor = new JcyoProcessor(new JcyoVariables(), options, inputDir, null);
+		processor.process(input.toPath());
+
+		assertThat(processor.statistics().processedFiles()).isEqualTo(0);
+		assertThat(processor.statistics().unchangedFiles()).isEqualTo(1);
+
+		// Options that don't influence the output keep the fingerprints
+		var unrelatedOptions = JcyoOptions.builder()
+				.updateInput(true)
+				.changeDetection(changeDetection)
+				.fingerprintFile(fingerprintFile)
+				.lexerMode(JcyoLexerMode.BUFFERED)
+				.parallelism(4)
+				.build();
+		processor = new JcyoProcessor(new JcyoVariables(), unrelatedOptions, inputDir, null);
+		processor.process(input.toPath());
+
+		assertThat(processor.statistics().unchangedFiles()).isEqualTo(1);
+
+		// Options that influence the output invalidate the fingerprints
+		var outputOptions = JcyoOptions.builder()
+				.updateInput(true)
+				.changeDetection(changeDetection)
+				.fingerprintFile(fingerprintFile)
+				.skipDirectiveFreeFiles(false)
+				.build();
+		processor = new JcyoProcessor(new JcyoVariables(), outputOptions, inputDir, null);
+		processor.process(input.toPath());
+
+		assertThat(processor.statistics().processedFiles()).isEqualTo(1);
+
+		// Different variables invalidate the fingerprints
+		JcyoVariables variables = new JcyoVariables();
+		variables.set("a", new JcyoString("b"));
+		processor = new JcyoProcessor(variables, options, inputDir, null);
+		processor.process(input.toPath());
+
+		assertThat(processor.statistics().processedFiles()).isEqualTo(1);
+
+		// Changed files are processed again
+		createInputFile(input, """
+				class Test {
+					//# if false
+					int b;
+					//# end
+				}
+				""");
+		processor.process(input.toPath());
+
+		assertThat(processor.statistics().processedFiles()).isEqualTo(2);
+		assertThat(input).content().contains("//- int b;");
+	}
+
+	@Test
+	@SneakyThrows
+	void processAllInParallel() {
+		for (int i = 0; i < 50; i++) {
+			Path directory = inputDir.resolve("package" + i % 5);
+			Files.createDirectories(directory);
+			createInputFile(directory.resolve("Test" + i + ".java").toFile(), """
+					class Test {
+						//# if true
+						//- int a;
+						//# end
+					}
+					""");
+		}
+		var jcyo = Jcyo.builder()
+				.variables(new JcyoVariables())
+				.options(JcyoOptions.builder().updateInput(true).parallelism(4).build())
+				.baseDirectory(inputDir)
+				.cleanOutputDirectory(cleanOutputDir)
+				.build();
+
+		jcyo.processAll();
+
+		assertThat(jcyo.statistics().processedFiles()).isEqualTo(50);
+		for (int i = 0; i < 50; i++) {
+			String name = "package" + i % 5 + "/Test" + i + ".java";
+			assertThat(inputDir.resolve(name)).content().contains("\tint a;");
+			assertThat(cleanOutputDir.resolve(name)).content().isEqualTo("class Test {\n\tint a;\n}\n");
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(JcyoUpdateStrategy.class)
+	@SneakyThrows
+	void processAllStaged(JcyoUpdateStrategy updateStrategy) {
+		String unchanged = "class Unchanged {\n\tint a;\n}\n";
+		createInputFile(inputDir.resolve("Unchanged.java").toFile(), unchanged);
+		for (int i = 0; i < 20; i++) {
+			createInputFile(inputDir.resolve("Test" + i + ".java").toFile(), """
+					class Test {
+						//# if true
+						//- int a;
+						//# end
+						//# if false
+						int b;
+						//# end
+					}
+					""");
+		}
+		var jcyo = Jcyo.builder()
+				.variables(new JcyoVariables())
+				.options(JcyoOptions.builder()
+						.updateInput(true)
+						.updateStrategy(updateStrategy)
+						.stagedExecution(true)
+						.parallelism(2)
+						.maxInFlightBytes(256)
+						.build())
+				.baseDirectory(inputDir)
+				.cleanOutputDirectory(cleanOutputDir)
+				.build();
+
+		jcyo.processAll();
+
+		assertThat(jcyo.statistics().processedFiles()).isEqualTo(21);
+		assertThat(jcyo.statistics().directiveFreeFiles()).isEqualTo(1);
+		assertThat(inputDir.resolve("Unchanged.java")).content().isEqualTo(unchanged);
+		assertThat(cleanOutputDir.resolve("Unchanged.java")).content().isEqualTo(unchanged);
+		for (int i = 0; i < 20; i++) {
+			assertThat(inputDir.resolve("Test" + i + ".java")).content().isEqualTo("""
+					class Test {
+						//# if true
+						int a;
+						//# end
+						//# if false
+						//- int b;
+						//# end
+					}
+					""");
+			assertThat(cleanOutputDir.resolve("Test" + i + ".java")).content()
+					.isEqualTo("class Test {\n\tint a;\n}\n");
+		}
+		try (var files = Files.list(inputDir)) {
+			assertThat(files).allMatch(file -> file.getFileName().toString().endsWith(".java"));
+		}
+	}
+
 	@Test
 	@SneakyThrows
 	void processStableLineComments() {
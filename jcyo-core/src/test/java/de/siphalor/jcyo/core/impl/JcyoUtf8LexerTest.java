@@ -0,0 +1,100 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.token.*;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JcyoUtf8LexerTest {
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"""
+					package test.abc;
+					//- import static hi;
+					
+					//# if false
+					1E100+"test".5f
+					//# end:if
+					""",
+			"/*-test/* blub *//*- /*#if false *//*#end*/",
+			"/*- a /*- b */ c /*- d */",
+			"String s = \"\"\"\r\n\ttext \\\"\"\" block\"\"\";\r\nchar c = '\\'';",
+			"/** javadoc **/ still comment */ a * b / c /**/",
+			"\täß =  € +  x;\n\r//// comment ✓",
+			"a \u3000\u3000 b\t\t\tc\u3000\u3000;   \n",
+			"s = \"\"ä + \"\"😀 + \"\\€\" /* a *ä */;",
+	})
+	void sameAsStreamingLexer(String source) {
+		JcyoOptions options = JcyoOptions.builder().build();
+		List<Token> expected = new JcyoLexer(new StringReader(source), options).stream().toList();
+
+		var lexer = new JcyoUtf8Lexer(MemorySegment.ofArray(source.getBytes(StandardCharsets.UTF_8)), options);
+
+		assertThat(lexer.stream().toList()).isEqualTo(expected);
+	}
+
+	@Test
+	void supplementaryCodepoints() {
+		var lexer = new JcyoUtf8Lexer(
+				MemorySegment.ofArray("a𝑥b 😀".getBytes(StandardCharsets.UTF_8)),
+				JcyoOptions.builder().build()
+		);
+
+		assertThat(lexer.stream().toList()).isEqualTo(List.of(
+				new IdentifierToken("a𝑥b"),
+				new WhitespaceToken(' '),
+				new OperatorToken("😀".codePointAt(0))
+		));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"61 c3 20 e2 82",
+			"e2 82 41 c0 af 80 ff",
+			"e0 80 80 41 e0 a0 41",
+			"ed a0 80 41 ed a0 41 ed 9f bf",
+			"f0 80 80 80 f4 90 80 80 f5 80 80 80",
+			"f1 80 41 f1 80 80",
+	})
+	void malformedInput(String hex) {
+		byte[] bytes = HexFormat.ofDelimiter(" ").parseHex(hex);
+		JcyoOptions options = JcyoOptions.builder().build();
+		var reader = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+		List<Token> expected = new JcyoLexer(reader, options).stream().toList();
+
+		var lexer = new JcyoUtf8Lexer(MemorySegment.ofArray(bytes), options);
+
+		assertThat(lexer.stream().toList()).isEqualTo(expected);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"class Test {\n\t// äöü\n\tString s = \"€ 😀\";\n}\n",
+			"/*- disabled 😀 */ a /* ✓ */\r\n",
+	})
+	@SneakyThrows
+	void roundTrip(String source) {
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		JcyoOptions options = JcyoOptions.builder().build();
+		var out = new ByteArrayOutputStream();
+		try (var writer = new TokenWriter(new DirectUtf8Writer(out, 16), options)) {
+			writer.writeAll(new JcyoUtf8Lexer(MemorySegment.ofArray(bytes), options));
+		}
+
+		assertThat(out.toByteArray()).isEqualTo(bytes);
+	}
+}
@@ -0,0 +1,110 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongestFirstScheduleTest {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@SneakyThrows
+	void ordersBySize() {
+		Path small = createFile("Small.java", 10);
+		Path large = createFile("Large.java", 1000);
+		Path medium = createFile("Medium.java", 100);
+
+		var schedule = LongestFirstSchedule.create(List.of(small, large, medium), _ -> -1, 0);
+
+		assertThat(schedule.hasHugeFiles()).isFalse();
+		assertThat(schedule.poll()).isEqualTo(large);
+		assertThat(schedule.poll()).isEqualTo(medium);
+		assertThat(schedule.poll()).isEqualTo(small);
+		assertThat(schedule.poll()).isNull();
+	}
+
+	@Test
+	@SneakyThrows
+	void prefersRecordedCosts() {
+		Path slow = createFile("Slow.java", 100);
+		Path fast = createFile("Fast.java", 1000);
+		Path unknown = createFile("Unknown.java", 500);
+		// The recorded files average at 6000 ns per 1100 bytes, so that the unknown file is estimated at about 2700 ns
+		Map<Path, Long> costs = Map.of(slow, 5000L, fast, 1000L);
+
+		var schedule = LongestFirstSchedule.create(
+				List.of(fast, unknown, slow),
+				file -> costs.getOrDefault(file, -1L),
+				0
+		);
+
+		assertThat(schedule.poll()).isEqualTo(slow);
+		assertThat(schedule.poll()).isEqualTo(unknown);
+		assertThat(schedule.poll()).isEqualTo(fast);
+	}
+
+	@Test
+	@SneakyThrows
+	void separatesHugeFiles() {
+		Path small = createFile("Small.java", 10);
+		Path huge = createFile("Huge.java", 2000);
+		Path larger = createFile("Larger.java", 3000);
+
+		var schedule = LongestFirstSchedule.create(List.of(small, huge, larger), _ -> -1, 1000);
+
+		assertThat(schedule.hasHugeFiles()).isTrue();
+		assertThat(schedule.pollHuge()).isEqualTo(larger);
+		assertThat(schedule.poll()).isEqualTo(small);
+		assertThat(schedule.poll()).isEqualTo(huge);
+		assertThat(schedule.pollHuge()).isNull();
+		assertThat(schedule.poll()).isNull();
+	}
+
+	@Test
+	@SneakyThrows
+	void usesAllWorkersOnceHugeFilesAreDone() {
+		Path huge = createFile("Huge.java", 2000);
+		List<Path> files = new ArrayList<>(List.of(huge));
+		for (int i = 0; i < 8; i++) {
+			files.add(createFile("Regular" + i + ".java", 10));
+		}
+		var schedule = LongestFirstSchedule.create(files, _ -> -1, 1000);
+		// Regular files are only done once all four workers work on them at the same time
+		var barrier = new CyclicBarrier(4);
+
+		var pool = new ForkJoinPool(4);
+		try {
+			schedule.process(pool, 4, file -> {
+				if (!file.equals(huge)) {
+					await(barrier);
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+
+		assertThat(schedule.poll()).isNull();
+	}
+
+	@SneakyThrows
+	private static void await(CyclicBarrier barrier) {
+		barrier.await(10, TimeUnit.SECONDS);
+	}
+
+	@SneakyThrows
+	private Path createFile(String name, int size) {
+		return Files.writeString(tempDir.resolve(name), "a".repeat(size));
+	}
+}
@@ -0,0 +1,85 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+import de.siphalor.jcyo.core.impl.token.Token;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelTapeLexerTest {
+	private static final String SOURCE = """
+			package de.siphalor.jcyo.test;
+
+			import java.util.List;
+
+			class Test {
+				/* a comment
+				 * over multiple lines
+				 */
+				String text = \"""
+						a text block
+						over multiple lines
+						\""";
+				void test() {
+					//# if a == "b"
+					//- System.out.println("Hello\\n");
+					//# end
+					/*# if false *//*- int a =
+							5 + 6;
+					*//*# end */
+					/*# if true
+					   && false */
+					int b = 'x';\r
+					int c = 2;\n\r
+					int d = 3;\r\n
+				}
+			}
+			""";
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void sameAsSequentialChars(boolean verbatimChunks) {
+		JcyoOptions options = JcyoOptions.builder().verbatimChunks(verbatimChunks).build();
+		char[] chars = SOURCE.toCharArray();
+		assertSameAsSequential(() -> new JcyoArrayLexer(chars, 0, chars.length, options));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void sameAsSequentialUtf8(boolean verbatimChunks) {
+		JcyoOptions options = JcyoOptions.builder().verbatimChunks(verbatimChunks).build();
+		MemorySegment segment = MemorySegment.ofArray(("// ünïcödé\n" + SOURCE).getBytes(StandardCharsets.UTF_8));
+		assertSameAsSequential(() -> new JcyoUtf8Lexer(segment, options));
+	}
+
+	private void assertSameAsSequential(Supplier<JcyoIndexedLexer> lexerFactory) {
+		TokenTape expected = new TokenTape();
+		lexerFactory.get().lexInto(expected);
+
+		int seamsFailed = 0;
+		for (int partSize = 1; partSize < SOURCE.length(); partSize++) {
+			TokenTape actual = new TokenTape();
+			seamsFailed += new ParallelTapeLexer(ForkJoinPool.commonPool(), partSize).lexInto(lexerFactory.get(), actual);
+
+			assertThat(tokens(actual)).as("part size %d", partSize).isEqualTo(tokens(expected));
+		}
+		assertThat(seamsFailed).isPositive();
+	}
+
+	private List<Token> tokens(TokenTape tape) {
+		List<Token> tokens = new ArrayList<>(tape.size());
+		for (int i = 0; i < tape.size(); i++) {
+			tokens.add(tape.token(i));
+		}
+		return tokens;
+	}
+}
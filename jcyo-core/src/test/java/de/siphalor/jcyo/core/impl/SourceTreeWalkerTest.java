@@ -0,0 +1,84 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceTreeWalkerTest {
+	@TempDir
+	Path baseDirectory;
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	@SneakyThrows
+	void walksIncludedFiles(boolean parallel) {
+		createFiles(
+				"Root.java",
+				"Root.txt",
+				"package-info.java",
+				"a/A.java",
+				"a/b/B.java",
+				"a/generated/Generated.java",
+				"build/Build.java",
+				".git/Git.java",
+				"c/d/e/f/Deep.java"
+		);
+		var walker = new SourceTreeWalker(
+				baseDirectory,
+				List.of("*.java"),
+				List.of(".*", "*-*.java", "build", "a/generated")
+		);
+
+		Queue<Path> files = new ConcurrentLinkedQueue<>();
+		if (parallel) {
+			var pool = new ForkJoinPool(4);
+			try {
+				walker.walk(pool, files::add);
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			walker.walk(files::add);
+		}
+
+		assertThat(files).map(file -> baseDirectory.relativize(file).toString().replace('\\', '/'))
+				.containsExactlyInAnyOrder("Root.java", "a/A.java", "a/b/B.java", "c/d/e/f/Deep.java");
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	@SneakyThrows
+	void matchesRelativePaths(boolean parallel) {
+		createFiles("a/A.java", "a/b/B.java", "c/C.java");
+		var walker = new SourceTreeWalker(baseDirectory, List.of("a/**"), List.of());
+
+		Queue<Path> files = new ConcurrentLinkedQueue<>();
+		if (parallel) {
+			walker.walk(ForkJoinPool.commonPool(), files::add);
+		} else {
+			walker.walk(files::add);
+		}
+
+		assertThat(files).map(file -> baseDirectory.relativize(file).toString().replace('\\', '/'))
+				.containsExactlyInAnyOrder("a/A.java", "a/b/B.java");
+	}
+
+	@SneakyThrows
+	private void createFiles(String... paths) {
+		for (String path : paths) {
+			Path file = baseDirectory.resolve(path);
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, "class Test {}");
+		}
+	}
+}
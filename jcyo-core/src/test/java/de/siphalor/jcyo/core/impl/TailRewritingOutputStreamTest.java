@@ -0,0 +1,52 @@
+package de.siphalor.jcyo.core.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TailRewritingOutputStreamTest {
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@CsvSource({
+			"'abcdef', 'abcdef', false, 6",
+			"'abcdef', 'abcxef', true, 3",
+			"'abcdef', 'abc', true, 3",
+			"'abc', 'abcdef', true, 3",
+			"'abcdef', '', true, 0",
+			"'', 'abc', true, 0",
+	})
+	@SneakyThrows
+	void rewritesFromFirstDifference(String original, String output, boolean changed, long divergenceOffset) {
+		Path file = tempDir.resolve("Test.java");
+		Files.writeString(file, original);
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			var outputStream = new TailRewritingOutputStream(channel);
+			byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+			// Single bytes and arrays take different paths
+			if (bytes.length > 0) {
+				outputStream.write(bytes[0]);
+				outputStream.write(bytes, 1, bytes.length - 1);
+			}
+
+			assertThat(Files.readString(file)).isEqualTo(original);
+			assertThat(outputStream.changed()).isEqualTo(changed);
+			assertThat(outputStream.divergenceOffset()).isEqualTo(divergenceOffset);
+
+			outputStream.commit();
+		}
+
+		assertThat(Files.readString(file)).isEqualTo(output);
+	}
+}
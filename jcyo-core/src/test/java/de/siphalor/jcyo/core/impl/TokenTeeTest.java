@@ -0,0 +1,45 @@
+package de.siphalor.jcyo.core.impl;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.*;
+import de.siphalor.jcyo.core.impl.transform.JcyoCleaner;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenTeeTest {
+	@Test
+	@SneakyThrows
+	void writesBothOutputsInOnePass() {
+		JcyoOptions options = JcyoOptions.builder().build();
+		var output = new StringWriter();
+		var cleanOutput = new StringWriter();
+
+		try (
+				var writer = new TokenWriter(output, options);
+				var cleanWriter = new TokenWriter(cleanOutput, options)
+		) {
+			cleanWriter.writeAll(new JcyoCleaner(new TokenTee(TokenStream.from(List.of(
+					new IdentifierToken("a"),
+					OperatorToken.of(';'),
+					LineBreakToken.of('\n', 1),
+					new JcyoDisabledStartToken("//-", CommentStyle.LINE),
+					WhitespaceToken.of(' '),
+					new IdentifierToken("b"),
+					OperatorToken.of(';'),
+					LineBreakToken.of('\n', 1),
+					new IdentifierToken("c"),
+					OperatorToken.of(';'),
+					EofToken.instance()
+			)), writer)));
+		}
+
+		assertThat(output.toString()).isEqualTo("a;\n//- b;\nc;");
+		assertThat(cleanOutput.toString()).isEqualTo("a;\nc;");
+	}
+}
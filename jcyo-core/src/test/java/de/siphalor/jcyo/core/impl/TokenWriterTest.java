@@ -6,7 +6,9 @@ import de.siphalor.jcyo.core.impl.token.*;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -118,4 +120,55 @@ class TokenWriterTest {
 				\t //- );
 				""");
 	}
+
+	@Test
+	@SneakyThrows
+	void testDisabledLineModeIndentRuns() {
+		var stringWriter = new StringWriter();
+
+		var writer = new TokenWriter(stringWriter, JcyoOptions.builder().build());
+
+		writer.writeAll(TokenStream.from(List.of(
+				new JcyoDisabledRegionStartToken(CommentStyle.LINE, "\t\t"),
+				new WhitespaceToken("\t\t\t"),
+				new IdentifierToken("a"),
+				new LineBreakToken("\n"),
+				new WhitespaceToken("\t  "),
+				new IdentifierToken("b"),
+				new LineBreakToken("\n"),
+				new WhitespaceToken("\t"),
+				new IdentifierToken("c"),
+				new LineBreakToken("\n"),
+				new JcyoDisabledRegionEndToken(),
+				EofToken.instance()
+		)));
+
+		assertThat(stringWriter.toString()).isEqualTo("\t\t//- \ta\n\t//-   b\n\t//- c\n");
+	}
+
+	@Test
+	@SneakyThrows
+	void testDisabledLineModeFlexComment() {
+		List<Token> tokens = List.of(
+				new JcyoDisabledRegionStartToken(CommentStyle.LINE, "\t"),
+				new PlainJavaCommentToken("/* a\r\n\t * b\n\t\n */", CommentStyle.FLEX, false),
+				new JcyoDisabledRegionEndToken(),
+				EofToken.instance()
+		);
+		String expected = "//- /* a\r\n\t//-  * b\n\t\n//-  */";
+
+		var stringWriter = new StringWriter();
+		new TokenWriter(stringWriter, JcyoOptions.builder().build()).writeAll(TokenStream.from(tokens));
+		assertThat(stringWriter.toString()).isEqualTo(expected);
+
+		// A tiny shared buffer forces the pre-encoded markers to be split across flushes
+		byte[] buffer = new byte[4];
+		for (int i = 0; i < 2; i++) {
+			var out = new ByteArrayOutputStream();
+			try (var writer = new TokenWriter(new DirectUtf8Writer(out, buffer), JcyoOptions.builder().build())) {
+				writer.writeAll(TokenStream.from(tokens));
+			}
+			assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+		}
+	}
 }
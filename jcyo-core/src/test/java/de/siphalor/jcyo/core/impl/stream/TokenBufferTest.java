@@ -0,0 +1,109 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.IdentifierToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBufferTest {
+	@Test
+	void fifoWithWrapAround() {
+		TokenBuffer buffer = new TokenBuffer();
+		List<Token> read = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			buffer.pushToken(identifier(i));
+			if (i % 3 == 0) {
+				read.add(buffer.nextToken());
+			}
+		}
+		while (!buffer.isEmpty()) {
+			read.add(buffer.nextToken());
+		}
+
+		assertThat(read).hasSize(100);
+		for (int i = 0; i < 100; i++) {
+			assertThat(read.get(i)).isEqualTo(identifier(i));
+		}
+	}
+
+	@Test
+	void pushFront() {
+		TokenBuffer buffer = new TokenBuffer();
+		buffer.pushToken(identifier(1));
+		buffer.pushFrontToken(identifier(0));
+
+		assertThat(buffer.peekToken(0)).isEqualTo(identifier(0));
+		assertThat(buffer.peekToken(1)).isEqualTo(identifier(1));
+		assertThat(buffer.nextToken()).isEqualTo(identifier(0));
+		assertThat(buffer.nextToken()).isEqualTo(identifier(1));
+		assertThat(buffer.isEmpty()).isTrue();
+	}
+
+	@Test
+	void markAndReset() {
+		TokenBuffer buffer = new TokenBuffer();
+		buffer.pushToken(identifier(0));
+		buffer.nextToken();
+		buffer.mark();
+		for (int i = 1; i < 40; i++) {
+			buffer.pushToken(identifier(i));
+			assertThat(buffer.nextToken()).isEqualTo(identifier(i));
+		}
+		buffer.pushToken(EofToken.instance());
+		assertThat(buffer.nextToken()).isSameAs(EofToken.instance());
+		assertThatThrownBy(() -> buffer.pushFrontToken(identifier(0))).isInstanceOf(IllegalStateException.class);
+
+		assertThat(buffer.reset()).isEqualTo(40);
+		assertThat(buffer.size()).isEqualTo(40);
+		assertThat(buffer.peekToken(38)).isEqualTo(identifier(39));
+		assertThat(buffer.peekToken(39)).isSameAs(EofToken.instance());
+		assertThat(buffer.peekToken(100)).isSameAs(EofToken.instance());
+		for (int i = 1; i < 40; i++) {
+			assertThat(buffer.nextToken()).isEqualTo(identifier(i));
+		}
+		assertThat(buffer.nextToken()).isSameAs(EofToken.instance());
+		assertThat(buffer.nextToken()).isSameAs(EofToken.instance());
+	}
+
+	@Test
+	void unmark() {
+		TokenBuffer buffer = new TokenBuffer();
+		buffer.pushToken(identifier(0));
+		buffer.pushToken(identifier(1));
+		buffer.mark();
+		buffer.nextToken();
+		buffer.unmark();
+
+		assertThat(buffer.isMarked()).isFalse();
+		assertThat(buffer.nextToken()).isEqualTo(identifier(1));
+		assertThatThrownBy(buffer::reset).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void lookahead() {
+		List<Token> tokens = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			tokens.add(identifier(i));
+		}
+		LookaheadTokenStream stream = new LookaheadTokenStream(TokenStream.from(tokens));
+
+		assertThat(stream.peekToken(150)).isEqualTo(identifier(150));
+		stream.mark();
+		for (int i = 0; i < 199; i++) {
+			stream.nextToken();
+		}
+		assertThat(stream.reset()).isEqualTo(199);
+		assertThat(stream.nextToken()).isEqualTo(identifier(0));
+		assertThat(stream.peekToken(199)).isSameAs(EofToken.instance());
+	}
+
+	private static Token identifier(int index) {
+		return new IdentifierToken("t" + index);
+	}
+}
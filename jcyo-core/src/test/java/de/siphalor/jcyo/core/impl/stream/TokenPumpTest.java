@@ -0,0 +1,85 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.impl.JcyoParseException;
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.IdentifierToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Timeout(10)
+class TokenPumpTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void preservesOrder() {
+		List<Token> tokens = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			tokens.add(new IdentifierToken("t" + i));
+		}
+
+		try (TokenPump pump = new TokenPump(TokenStream.from(tokens), 4, executor)) {
+			List<Token> read = new ArrayList<>();
+			Token[] batch = new Token[3];
+			while (true) {
+				int count = pump.nextTokens(batch, 0, batch.length);
+				for (int i = 0; i < count; i++) {
+					read.add(batch[i]);
+				}
+				if (batch[count - 1] instanceof EofToken) {
+					break;
+				}
+			}
+
+			assertThat(read.subList(0, tokens.size())).isEqualTo(tokens);
+			assertThat(read).hasSize(tokens.size() + 1);
+			assertThat(pump.nextToken()).isSameAs(EofToken.instance());
+		}
+	}
+
+	@Test
+	void rethrowsFailure() {
+		TokenStream failing = new TokenStream() {
+			private int count;
+
+			@Override
+			public Token nextToken() {
+				if (count++ == 100) {
+					throw new JcyoParseException("Broken");
+				}
+				return new IdentifierToken("a");
+			}
+		};
+
+		try (TokenPump pump = new TokenPump(failing, 16, executor)) {
+			assertThatThrownBy(() -> {
+				while (true) {
+					pump.nextToken();
+				}
+			}).isInstanceOf(JcyoParseException.class).hasMessageContaining("Broken");
+		}
+	}
+
+	@Test
+	void closeStopsEndlessSource() {
+		TokenStream endless = () -> new IdentifierToken("a");
+
+		TokenPump pump = new TokenPump(endless, 16, executor);
+		assertThat(pump.nextToken()).isEqualTo(new IdentifierToken("a"));
+		pump.close();
+	}
+}
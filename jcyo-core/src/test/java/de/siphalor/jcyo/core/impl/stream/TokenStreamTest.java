@@ -3,6 +3,8 @@ package de.siphalor.jcyo.core.impl.stream;
 import de.siphalor.jcyo.core.impl.token.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -21,4 +23,40 @@ class TokenStreamTest {
 		assertThat(stream.nextToken()).isSameAs(EofToken.instance());
 		assertThat(stream.nextToken()).isSameAs(EofToken.instance());
 	}
+
+	@Test
+	void nextTokens() {
+		List<Token> tokens = List.of(new IdentifierToken("a"), new IdentifierToken("b"), new IdentifierToken("c"));
+		TokenStream stream = TokenStream.from(tokens);
+
+		Token[] batch = new Token[4];
+		assertThat(stream.nextTokens(batch, 1, 2)).isEqualTo(2);
+		assertThat(batch).containsExactly(null, tokens.get(0), tokens.get(1), null);
+		assertThat(stream.nextTokens(batch, 0, 4)).isEqualTo(2);
+		assertThat(batch).startsWith(tokens.get(2), EofToken.instance());
+	}
+
+	@Test
+	void batchingPeekable() {
+		List<Token> tokens = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			tokens.add(new IdentifierToken("t" + i));
+		}
+		PeekableTokenStream stream = PeekableTokenStream.batching(TokenStream.from(tokens));
+
+		assertThat(stream.peekToken()).isSameAs(tokens.getFirst());
+		assertThat(stream.nextToken()).isSameAs(tokens.getFirst());
+		List<Token> read = new ArrayList<>();
+		Token[] batch = new Token[100];
+		while (true) {
+			int count = stream.nextTokens(batch, 0, batch.length);
+			assertThat(count).isPositive();
+			read.addAll(Arrays.asList(batch).subList(0, count));
+			if (batch[count - 1] instanceof EofToken) {
+				break;
+			}
+		}
+		assertThat(read.removeLast()).isSameAs(EofToken.instance());
+		assertThat(read).isEqualTo(tokens.subList(1, tokens.size()));
+	}
 }
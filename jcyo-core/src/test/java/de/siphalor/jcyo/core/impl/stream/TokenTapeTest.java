@@ -0,0 +1,101 @@
+package de.siphalor.jcyo.core.impl.stream;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.JcyoArrayLexer;
+import de.siphalor.jcyo.core.impl.JcyoLexer;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenTapeTest {
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"""
+					package test.abc;
+					//- import static hi;
+					
+					//# if false
+					1E100+"test"
+					//# end:if
+					""",
+			"/*-test/* blub *//*- /*#if false *//*#end*/",
+			"/*- a /*- if\r\n */ c /*- d */",
+			"/** javadoc */\r\n/// line javadoc\n\rint _ = 'c' * 2 / 1;",
+	})
+	void sameAsStreamingLexer(String source) {
+		JcyoOptions options = JcyoOptions.builder().build();
+		List<Token> expected = new JcyoLexer(new StringReader(source), options).stream().toList();
+
+		TokenTape tape = new TokenTape();
+		char[] chars = source.toCharArray();
+		new JcyoArrayLexer(chars, 0, chars.length, options).lexInto(tape);
+
+		assertThat(tape.size()).isEqualTo(expected.size());
+		assertThat(tape.stream().stream().toList()).isEqualTo(expected);
+	}
+
+	@Test
+	void cursor() {
+		TokenTape tape = new TokenTape();
+		char[] chars = "if (a)\n".toCharArray();
+		new JcyoArrayLexer(chars, 0, chars.length, JcyoOptions.builder().build()).lexInto(tape);
+
+		TapeTokenStream stream = tape.stream();
+		assertThat(stream.peekKind()).isEqualTo(TokenKind.KEYWORD);
+		assertThat(stream.peekPayload()).isEqualTo(JavaKeyword.IF.ordinal());
+		assertThat(stream.nextToken()).isSameAs(JavaKeywordToken.of(JavaKeyword.IF));
+		stream.skip();
+		assertThat(stream.peekKind()).isEqualTo(TokenKind.OPERATOR);
+		Token peeked = stream.peekToken();
+		assertThat(stream.nextToken()).isSameAs(peeked);
+		assertThat(stream.peekKind()).isEqualTo(TokenKind.IDENTIFIER);
+		assertThat(stream.peekText()).isEqualTo("a");
+		stream.skip();
+		stream.skip();
+		assertThat(stream.nextToken()).isSameAs(LineBreakToken.of('\n', 1));
+		assertThat(stream.peekKind()).isEqualTo(TokenKind.EOF);
+		assertThat(stream.nextToken()).isSameAs(EofToken.instance());
+	}
+
+	@Test
+	void batches() {
+		TokenTape tape = new TokenTape();
+		char[] chars = "if (a)\n".toCharArray();
+		new JcyoArrayLexer(chars, 0, chars.length, JcyoOptions.builder().build()).lexInto(tape);
+
+		TapeTokenStream stream = tape.stream();
+		Token peeked = stream.peekToken();
+		Token[] batch = new Token[8];
+		assertThat(stream.nextTokens(batch, 1, 3)).isEqualTo(3);
+		assertThat(batch).containsSequence(peeked, new WhitespaceToken(' '), OperatorToken.of('('));
+		assertThat(stream.nextTokens(batch, 0, 8)).isEqualTo(4);
+		assertThat(batch).startsWith(
+				new IdentifierToken("a"),
+				OperatorToken.of(')'),
+				LineBreakToken.of('\n', 1),
+				EofToken.instance()
+		);
+		assertThat(stream.nextTokens(batch, 0, 8)).isEqualTo(1);
+		assertThat(batch[0]).isSameAs(EofToken.instance());
+	}
+
+	@Test
+	void grow() {
+		TokenTape tape = new TokenTape();
+		tape.reset((start, end) -> "x".repeat(end - start));
+		for (int i = 0; i < 5000; i++) {
+			tape.add(TokenKind.IDENTIFIER, i, i + 1 + i % 3, 0);
+		}
+
+		assertThat(tape.size()).isEqualTo(5000);
+		assertThat(tape.text(4999)).isEqualTo("xx");
+		assertThat(tape.token(4998)).isEqualTo(new IdentifierToken("x"));
+	}
+}
@@ -0,0 +1,28 @@
+package de.siphalor.jcyo.core.impl.token;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JavaKeywordTest {
+	@ParameterizedTest
+	@EnumSource(JavaKeyword.class)
+	void getKeyword(JavaKeyword keyword) {
+		assertThat(JavaKeyword.getKeyword(keyword.text())).isSameAs(keyword);
+		assertThat(JavaKeyword.getKeyword(new StringBuilder(keyword.text()))).isSameAs(keyword);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"", "a", "__", "Class", "classes", "exportz", "extendz", "interfaces", "synchronizedd", "ïf"})
+	void getKeywordNonKeyword(String text) {
+		assertThat(JavaKeyword.getKeyword(text)).isNull();
+	}
+
+	@Test
+	void maxLength() {
+		assertThat(JavaKeyword.MAX_LENGTH).isEqualTo("synchronized".length());
+	}
+}
@@ -0,0 +1,133 @@
+package de.siphalor.jcyo.core.impl.transform;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.api.JcyoVariables;
+import de.siphalor.jcyo.core.api.value.JcyoString;
+import de.siphalor.jcyo.core.impl.JcyoLexer;
+import de.siphalor.jcyo.core.impl.stream.TokenStream;
+import de.siphalor.jcyo.core.impl.token.EofToken;
+import de.siphalor.jcyo.core.impl.token.Token;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FusedJcyoTransformerTest {
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"""
+			package de.siphalor.jcyo.test;
+
+			import de.siphalor.jcyo.test.something.Utils;
+			//- import de.siphalor.jcyo.test.something.Helper;
+
+			class Test {
+				public void test(/*# if int_type == "long" *//*- long *//*# else */int/*# end */ test) {
+					//# if test == "blub"
+					//- Helper.test();
+					//# else
+					Utils.test();
+					//# end
+				}
+			}
+			""",
+			"""
+			class Test {
+				public void test() {
+					/*# if false */ /* hi
+					*/
+					// ho
+					/// A javadoc
+					/** another javadoc */
+					/* should stay */
+					/*# end */
+					//# if false
+					// Test
+					/* test */ return;
+					//# end
+					/*# if true *//*-  /* hi
+					*//*- // nested //- line
+					 *//*# end */
+				}
+			}
+			""",
+			"""
+			class Test {
+				//# generated
+				int generated = 1;
+				/*- disabled */
+				//# end
+				/*# generated */int a;/*# end */
+				//# if test == "blub"
+				\t//# if int_type == "int"
+				\tint b;
+				\t//# elif int_type == "long"
+				\t//- long b;
+				\t//# else
+				\tshort b;
+				\t//# end
+				//# end
+				/*- a  *//*-   *//*-*/
+			}
+			""",
+	})
+	void sameAsStages(String source) {
+		JcyoVariables variables = new JcyoVariables();
+		variables.set("test", new JcyoString("blub"));
+		variables.set("int_type", new JcyoString("long"));
+		JcyoOptions options = JcyoOptions.builder().build();
+		JcyoDirectiveApplier applier = new JcyoDirectiveApplier(variables);
+
+		List<Token> staged = applier.apply(new GeneratedAndDisabledTokenRemover(
+				new JcyoUnpadder(new JcyoLexer(new StringReader(source), options)),
+				options
+		)).stream().toList();
+		List<Token> fused = applier.applyFused(new JcyoLexer(new StringReader(source), options), options)
+				.stream().toList();
+
+		assertThat(fused).isEqualTo(staged);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 2, 3, 5, 64})
+	void batchesMatchSingleTokens(int batchSize) {
+		String source = """
+				class Test {
+					//# if int_type == "long"
+					//- long a;
+					//# elif int_type == "int"
+					int a;
+					//# end
+					/*# generated */int b;/*# end */
+					/*# if false */short c;/*# end */
+				}
+				""";
+		JcyoVariables variables = new JcyoVariables();
+		variables.set("int_type", new JcyoString("long"));
+		JcyoOptions options = JcyoOptions.builder().build();
+		JcyoDirectiveApplier applier = new JcyoDirectiveApplier(variables);
+
+		List<Token> single = new ArrayList<>();
+		TokenStream singleStream = applier.applyFused(new JcyoLexer(new StringReader(source), options), options);
+		Token token;
+		do {
+			token = singleStream.nextToken();
+			single.add(token);
+		} while (!(token instanceof EofToken));
+
+		TokenStream batched = applier.applyFused(new JcyoLexer(new StringReader(source), options), options);
+		List<Token> batches = new ArrayList<>();
+		Token[] batch = new Token[batchSize];
+		do {
+			int count = batched.nextTokens(batch, 0, batchSize);
+			assertThat(count).isPositive();
+			batches.addAll(List.of(batch).subList(0, count));
+		} while (!(batches.getLast() instanceof EofToken));
+
+		assertThat(batches).isEqualTo(single);
+	}
+}
@@ -102,4 +102,50 @@ class UnusedImportDisablerTest {
 				new OperatorToken('>')
 		));
 	}
+
+	@Test
+	void collectUsedImports() {
+		TokenStream tokenStream = TokenStream.from(List.of(
+				new OperatorToken('@'),
+				new IdentifierToken("Annotation"),
+				new OperatorToken('('),
+				new OperatorToken('{'),
+				new OperatorToken('}'),
+				new OperatorToken(')'),
+				new LineBreakToken("\n"),
+				new JavaKeywordToken(JavaKeyword.PACKAGE),
+				new IdentifierToken("test"),
+				new OperatorToken(';'),
+				new LineBreakToken("\n"),
+				new JavaKeywordToken(JavaKeyword.IMPORT),
+				new IdentifierToken("test"),
+				new OperatorToken('.'),
+				new IdentifierToken("Annotation"),
+				new OperatorToken(';'),
+				new JavaKeywordToken(JavaKeyword.IMPORT),
+				new IdentifierToken("test"),
+				new OperatorToken('.'),
+				new IdentifierToken("Used"),
+				new OperatorToken(';'),
+				new JavaKeywordToken(JavaKeyword.IMPORT),
+				new IdentifierToken("test"),
+				new OperatorToken('.'),
+				new IdentifierToken("Unused"),
+				new OperatorToken(';'),
+				new LineBreakToken("\n"),
+				new JavaKeywordToken(JavaKeyword.CLASS),
+				new IdentifierToken("Test"),
+				new OperatorToken('{'),
+				new IdentifierToken("other"),
+				new OperatorToken('.'),
+				new IdentifierToken("Unused"),
+				new IdentifierToken("Used"),
+				new OperatorToken('}')
+		));
+
+		UnusedImportDisabler unusedImportDisabler = new UnusedImportDisabler();
+
+		assertThat(unusedImportDisabler.collectUsedImports(tokenStream))
+				.containsExactlyInAnyOrder("Annotation", "Used");
+	}
 }
@@ -0,0 +1,114 @@
+package de.siphalor.jcyo.core.impl.transform;
+
+import de.siphalor.jcyo.core.api.JcyoOptions;
+import de.siphalor.jcyo.core.impl.CommentStyle;
+import de.siphalor.jcyo.core.impl.JcyoArrayLexer;
+import de.siphalor.jcyo.core.impl.JcyoLexer;
+import de.siphalor.jcyo.core.impl.stream.TokenTape;
+import de.siphalor.jcyo.core.impl.token.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerbatimChunkExpanderTest {
+	private static final String SOURCE = """
+			package test;
+			
+			import java.util.List;
+			import java.util.Map;
+			
+			public class Test {
+				private final Map<String, List<String>> values = new HashMap<>();
+			
+				public String test(int a, int b) {
+					//# if a == "b"
+					//- return values.get("a").getFirst();
+					//# else
+					return String.valueOf(a * b / 2);
+					//# end
+				}
+			
+				public String block() { /*# if true */return "a";/*# else *//*- return "b"; *//*# end */ }
+			
+				String text = \"""
+						multiline text
+						\""" + 'c' + .5f; // trailing comment
+			}
+			""";
+
+	@Test
+	void chunksKeepTheirSourceSpans() {
+		List<Token> chunked = chunk(SOURCE);
+
+		assertThat(chunked).allMatch(token -> !(token instanceof VerbatimChunkToken chunk)
+				|| SOURCE.substring(chunk.start(), chunk.end()).equals(chunk.raw()));
+		assertThat(chunked).map(VerbatimChunkExpanderTest::withoutSourceSpan).contains(
+				new VerbatimChunkToken("private final Map<String, List<String>> values = new HashMap<>();"),
+				new VerbatimChunkToken("return String.valueOf(a * b / 2);"),
+				new VerbatimChunkToken("return values.get(\"a\").getFirst();")
+		);
+	}
+
+	@Test
+	void preservesText() {
+		List<Token> chunked = chunk(SOURCE);
+
+		assertThat(chunked.stream().map(token -> ((RepresentableToken) token).raw()).collect(Collectors.joining()))
+				.isEqualTo(SOURCE);
+		assertThat(chunked).noneMatch(token -> token instanceof VerbatimChunkToken(String raw, _, _)
+				&& (raw.isBlank() || Character.isWhitespace(raw.charAt(0)) || Character.isWhitespace(raw.charAt(raw.length() - 1))));
+	}
+
+	@Test
+	void expandsToUnchunkedTokens() {
+		JcyoOptions options = JcyoOptions.builder().build();
+		List<Token> expected = new JcyoLexer(new StringReader(SOURCE), options).stream().toList();
+
+		List<Token> expanded = new VerbatimChunkExpander(chunkedTape(SOURCE).stream()).stream().toList();
+
+		assertThat(expanded).isEqualTo(expected);
+	}
+
+	@Test
+	void noChunksInHeaderAndDirectives() {
+		List<Token> chunked = chunk(SOURCE);
+
+		assertThat(chunked).contains(
+				new JavaKeywordToken(JavaKeyword.IMPORT),
+				new IdentifierToken("java"),
+				new JcyoDirectiveStartToken("/*#", CommentStyle.FLEX),
+				new JavaKeywordToken(JavaKeyword.TRUE)
+		);
+	}
+
+	@Test
+	void noChunksInHeaderWithAnnotationBraces() {
+		String source = "@SuppressWarnings({\"x\"}) package p; import a.Unused; class A { int a = 1; }";
+		List<Token> chunked = chunk(source);
+
+		assertThat(chunked).contains(new JavaKeywordToken(JavaKeyword.IMPORT), new IdentifierToken("Unused"));
+		assertThat(chunked).anyMatch(token -> token instanceof VerbatimChunkToken chunk && chunk.raw().contains("int a"));
+	}
+
+	private static List<Token> chunk(String source) {
+		return chunkedTape(source).stream().stream().toList();
+	}
+
+	private static TokenTape chunkedTape(String source) {
+		TokenTape tape = new TokenTape();
+		char[] chars = source.toCharArray();
+		new JcyoArrayLexer(chars, 0, chars.length, JcyoOptions.builder().build()).lexInto(tape);
+		return tape;
+	}
+
+	private static Token withoutSourceSpan(Token token) {
+		if (token instanceof VerbatimChunkToken chunk) {
+			return new VerbatimChunkToken(chunk.raw());
+		}
+		return token;
+	}
+}
@@ -0,0 +1,49 @@
+package de.siphalor.jcyo.core.impl;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * Compares whole vectors of the input at once, using the preferred vector size of the platform.
+ * This class must only be loaded if the {@code jdk.incubator.vector} module is available,
+ * see {@link BoundaryScanner#preferred()}.
+ */
+class VectorBoundaryScanner extends BoundaryScanner {
+	private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+	@Override
+	public int indexOfAny(char[] chars, int from, int end, char first, char second) {
+		int i = from;
+		int bound = from + SHORTS.loopBound(end - from);
+		short firstShort = (short) first;
+		short secondShort = (short) second;
+		for (; i < bound; i += SHORTS.length()) {
+			ShortVector vector = ShortVector.fromCharArray(SHORTS, chars, i);
+			VectorMask<Short> matches = vector.eq(firstShort).or(vector.eq(secondShort));
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalarIndexOfAny(chars, i, end, first, second);
+	}
+
+	@Override
+	public long indexOfAny(MemorySegment segment, long from, long end, byte first, byte second) {
+		long i = from;
+		long bound = from + BYTES.loopBound(end - from);
+		for (; i < bound; i += BYTES.length()) {
+			ByteVector vector = ByteVector.fromMemorySegment(BYTES, segment, i, ByteOrder.nativeOrder());
+			VectorMask<Byte> matches = vector.eq(first).or(vector.eq(second));
+			if (matches.anyTrue()) {
+				return i + matches.firstTrue();
+			}
+		}
+		return scalarIndexOfAny(segment, i, end, first, second);
+	}
+}
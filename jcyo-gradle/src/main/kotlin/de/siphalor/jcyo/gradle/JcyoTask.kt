@@ -6,6 +6,7 @@ import de.siphalor.jcyo.core.api.JcyoVariables
 import de.siphalor.jcyo.core.api.value.JcyoValue
 import org.gradle.api.DefaultTask
 import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ListProperty
 import org.gradle.api.provider.MapProperty
 import org.gradle.api.provider.Property
 import org.gradle.api.tasks.Input
@@ -14,6 +15,12 @@ import org.gradle.api.tasks.Optional
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.TaskAction
 
+/**
+ * Runs jcyo in the Gradle daemon.
+ *
+ * The vectorized scanning of jcyo is only active if the daemon has been started with
+ * `--add-modules jdk.incubator.vector`, e.g. through `org.gradle.jvmargs`, otherwise the scalar fallback is used.
+ */
 abstract class JcyoTask : DefaultTask() {
 	@get:InputDirectory
 	abstract val inputDirectory: DirectoryProperty
@@ -24,6 +31,12 @@ abstract class JcyoTask : DefaultTask() {
 	@get:Input
 	abstract val variables: MapProperty<String, Any>
 
+	@get:Input
+	abstract val includes: ListProperty<String>
+
+	@get:Input
+	abstract val excludes: ListProperty<String>
+
 	@get:OutputDirectory
 	@get:Optional
 	abstract val cleanOutputDirectory: DirectoryProperty
@@ -31,6 +44,9 @@ abstract class JcyoTask : DefaultTask() {
 	init {
 		updateInputFiles.convention(true)
 		variables.convention(mapOf())
+		val defaultOptions = JcyoOptions.builder().build()
+		includes.convention(defaultOptions.includes())
+		excludes.convention(defaultOptions.excludes())
 	}
 
 	@TaskAction
@@ -40,7 +56,13 @@ abstract class JcyoTask : DefaultTask() {
 
 		Jcyo.builder()
 			.variables(jcyoVariables)
-			.options(JcyoOptions.builder().updateInput(updateInputFiles.get()).build())
+			.options(
+				JcyoOptions.builder()
+					.updateInput(updateInputFiles.get())
+					.includes(includes.get())
+					.excludes(excludes.get())
+					.build()
+			)
 			.baseDirectory(inputDirectory.get().asFile.toPath())
 			.cleanOutputDirectory(cleanOutputDirectory.orNull?.asFile?.toPath())
 			.build()